@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: Bitboards
+ *
+ * This class holds the precomputed attack tables used by the move generator and
+ * answers "which squares does this piece attack" questions with a few table lookups.
+ *
+ * Sliding pieces use classical ray attacks: each of the eight directions has a ray
+ * per square, and the first blocker on a ray is found with a single bit scan.
+ *
+ * Squares use the same numbering as ChessBoard (a8 = 0, h1 = 63).
+ */
+
+package com.george.board;
+
+public final class Bitboards {
+
+    // Ray directions as (row, column) steps; the first four increase the square index
+    private static final int[][] DIRECTIONS = {
+        {1, 0}, {0, 1}, {1, 1}, {1, -1},   // South, east, south-east, south-west
+        {-1, 0}, {0, -1}, {-1, 1}, {-1, -1} // North, west, north-east, north-west
+    };
+
+    private static final long[][] RAYS = new long[8][64];
+    private static final long[] KNIGHT_ATTACKS = new long[64];
+    private static final long[] KING_ATTACKS = new long[64];
+    private static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    // Every square a queen on an empty board could reach from each square
+    private static final long[] LINES = new long[64];
+
+    static {
+        int[][] knightSteps = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3;
+            int col = sq & 7;
+
+            for (int d = 0; d < 8; d++) {
+                int r = row + DIRECTIONS[d][0];
+                int c = col + DIRECTIONS[d][1];
+                if (onBoard(r, c)) {
+                    KING_ATTACKS[sq] |= bit(r, c);
+                }
+                while (onBoard(r, c)) {
+                    RAYS[d][sq] |= bit(r, c);
+                    r += DIRECTIONS[d][0];
+                    c += DIRECTIONS[d][1];
+                }
+                LINES[sq] |= RAYS[d][sq];
+            }
+
+            for (int[] step : knightSteps) {
+                if (onBoard(row + step[0], col + step[1])) {
+                    KNIGHT_ATTACKS[sq] |= bit(row + step[0], col + step[1]);
+                }
+            }
+
+            // White pawns capture towards row 0, black pawns towards row 7
+            for (int dc = -1; dc <= 1; dc += 2) {
+                if (onBoard(row - 1, col + dc)) {
+                    PAWN_ATTACKS[0][sq] |= bit(row - 1, col + dc);
+                }
+                if (onBoard(row + 1, col + dc)) {
+                    PAWN_ATTACKS[1][sq] |= bit(row + 1, col + dc);
+                }
+            }
+        }
+    }
+
+    private Bitboards() {
+        // Static helpers only
+    }
+
+    private static boolean onBoard(int row, int col) {
+        return row >= 0 && row < 8 && col >= 0 && col < 8;
+    }
+
+    private static long bit(int row, int col) {
+        return 1L << ((row << 3) | col);
+    }
+
+    /**
+     * Returns the squares attacked by a knight.
+     *
+     * @param sq The knight's square.
+     * @return The attacked squares.
+     */
+    public static long knightAttacks(int sq) {
+        return KNIGHT_ATTACKS[sq];
+    }
+
+    /**
+     * Returns the squares attacked by a king.
+     *
+     * @param sq The king's square.
+     * @return The attacked squares.
+     */
+    public static long kingAttacks(int sq) {
+        return KING_ATTACKS[sq];
+    }
+
+    /**
+     * Returns the squares attacked by a pawn.
+     *
+     * @param color 0 for a white pawn, 1 for a black pawn.
+     * @param sq The pawn's square.
+     * @return The attacked squares.
+     */
+    public static long pawnAttacks(int color, int sq) {
+        return PAWN_ATTACKS[color][sq];
+    }
+
+    /**
+     * Returns every square on a rank, file or diagonal through the given square.
+     *
+     * @param sq The square.
+     * @return The squares a queen could reach from there on an empty board.
+     */
+    public static long lines(int sq) {
+        return LINES[sq];
+    }
+
+    /**
+     * Returns the squares attacked by a rook, stopping at the first blocker in each
+     * direction (the blocker itself is included).
+     *
+     * @param sq The rook's square.
+     * @param occupied Every occupied square.
+     * @return The attacked squares.
+     */
+    public static long rookAttacks(int sq, long occupied) {
+        return positiveRay(0, sq, occupied) | positiveRay(1, sq, occupied)
+                | negativeRay(4, sq, occupied) | negativeRay(5, sq, occupied);
+    }
+
+    /**
+     * Returns the squares attacked by a bishop, stopping at the first blocker in each
+     * direction (the blocker itself is included).
+     *
+     * @param sq The bishop's square.
+     * @param occupied Every occupied square.
+     * @return The attacked squares.
+     */
+    public static long bishopAttacks(int sq, long occupied) {
+        return positiveRay(2, sq, occupied) | positiveRay(3, sq, occupied)
+                | negativeRay(6, sq, occupied) | negativeRay(7, sq, occupied);
+    }
+
+    /**
+     * Returns the squares attacked by a queen.
+     *
+     * @param sq The queen's square.
+     * @param occupied Every occupied square.
+     * @return The attacked squares.
+     */
+    public static long queenAttacks(int sq, long occupied) {
+        return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+    }
+
+    // Ray in a direction of increasing square index: the nearest blocker is the lowest bit
+    private static long positiveRay(int direction, int sq, long occupied) {
+        long attacks = RAYS[direction][sq];
+        long blockers = attacks & occupied;
+        if (blockers != 0) {
+            attacks ^= RAYS[direction][Long.numberOfTrailingZeros(blockers)];
+        }
+        return attacks;
+    }
+
+    // Ray in a direction of decreasing square index: the nearest blocker is the highest bit
+    private static long negativeRay(int direction, int sq, long occupied) {
+        long attacks = RAYS[direction][sq];
+        long blockers = attacks & occupied;
+        if (blockers != 0) {
+            attacks ^= RAYS[direction][63 - Long.numberOfLeadingZeros(blockers)];
+        }
+        return attacks;
+    }
+}
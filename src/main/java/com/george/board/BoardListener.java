@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Interface: BoardListener
+ *
+ * Receives change events from a ChessBoard. Each event carries the squares whose
+ * contents changed as a bitboard (bit n set for square n, see ChessBoard.square), so
+ * a move is reported without creating any objects: the two squares of a normal move,
+ * plus the rook's squares for castling and the captured pawn's square for en passant.
+ *
+ * Listeners are called on the thread that changed the board, right after the change.
+ */
+
+package com.george.board;
+
+@FunctionalInterface
+public interface BoardListener {
+
+    /**
+     * Called after squares of the board changed.
+     *
+     * @param board The board that changed.
+     * @param changedSquares One bit per changed square; -1 (all bits) when the whole
+     * position was replaced.
+     */
+    void squaresChanged(ChessBoard board, long changedSquares);
+}
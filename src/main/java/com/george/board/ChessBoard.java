@@ -25,22 +25,83 @@
  * Class: ChessBoard
  *
  * This class represents a chessboard and provides methods to manage its state.
- * The chessboard is stored as an 8x8 integer array, where positive numbers represent 
- * white pieces and negative numbers represent black pieces.
+ * The position is stored as a set of bitboards: one 64-bit word per piece type and
+ * colour, one occupancy word per colour and one for all pieces. A 64-entry mailbox
+ * mirrors the bitboards so single squares can be read without scanning every word.
+ * Piece values follow the original layout, where positive numbers represent white
+ * pieces and negative numbers represent black pieces.
+ *
+ * Squares are numbered row by row starting from the top-left corner of the board
+ * (a8 = 0, h8 = 7, a1 = 56, h1 = 63), matching the layout of getBoardArray().
+ *
+ * All state belongs to the instance, so any number of boards can be used at once.
+ * A single board is not thread-safe; give each thread its own board, using the copy
+ * constructor to take a snapshot of a game in progress.
  *
  * Key functionalities include:
+ * - Copying a position into a new or existing board.
+ * - Reading single squares and bitboards without allocating.
  * - Retrieving the board state as a 2D array or a 1D array.
- * - Moving pieces on the board, handling special moves such as castling.
+ * - Generating legal moves and counting them with perft.
+ * - Detecting the end of the game: mate, stalemate, repetition, the fifty-move rule
+ *   and insufficient material.
+ * - Keeping a Zobrist key of the position up to date on every change.
+ * - Playing legal moves, including castling, en passant and promotion.
+ * - Making and unmaking packed int moves through a fixed-size undo stack.
+ * - Reading and writing positions in FEN and moves in UCI notation.
  * - Adding and removing pieces from specific positions on the board.
  * - Managing player turns and determining the current player.
+ * - Telling BoardListeners which squares changed after each move or edit.
  */
 
 package com.george.board;
 
+import java.util.Arrays;
+
 public class ChessBoard {
 
-    // The chessboard is represented as an 8x8 2D array.
-    private static final int[][] board = new int[][]{
+    // FEN of the standard starting position
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // Piece letters indexed by piece type (white upper case, black lower case)
+    private static final String PIECE_LETTERS = " PRNBQK";
+
+    // Piece type values, positive for white and negative for black
+    public static final int EMPTY = 0;
+    public static final int PAWN = 1;
+    public static final int ROOK = 2;
+    public static final int KNIGHT = 3;
+    public static final int BISHOP = 4;
+    public static final int QUEEN = 5;
+    public static final int KING = 6;
+
+    // Castling rights, one bit per side and wing
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+
+    // Number of moves kept on the undo stack; older moves can no longer be taken back
+    public static final int MAX_UNDO = 1024;
+
+    // Squares of the same colour as a8 (the light squares)
+    private static final long LIGHT_SQUARES = 0xAA55AA55AA55AA55L;
+
+    // Castling rights kept when a piece moves from or to each square
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[0] = 15 & ~BLACK_QUEENSIDE;   // a8 rook
+        CASTLING_MASK[4] = 15 & ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);  // e8 king
+        CASTLING_MASK[7] = 15 & ~BLACK_KINGSIDE;    // h8 rook
+        CASTLING_MASK[56] = 15 & ~WHITE_QUEENSIDE;  // a1 rook
+        CASTLING_MASK[60] = 15 & ~(WHITE_KINGSIDE | WHITE_QUEENSIDE); // e1 king
+        CASTLING_MASK[63] = 15 & ~WHITE_KINGSIDE;   // h1 rook
+    }
+
+    // The starting position in the original row-by-row layout
+    private static final int[][] START_POSITION = new int[][]{
         {-2, -3, -4, -5, -6, -4, -3, -2}, // Row 0: Black's major pieces
         {-1, -1, -1, -1, -1, -1, -1, -1}, // Row 1: Black's pawns
         {0, 0, 0, 0, 0, 0, 0, 0},         // Empty squares
@@ -51,26 +112,470 @@ public class ChessBoard {
         {2, 3, 4, 5, 6, 4, 3, 2}          // Row 7: White's major pieces
     };
 
+    // One bitboard per piece type and colour (white pawn .. white king, black pawn .. black king)
+    private final long[] pieceBitboards = new long[12];
+
+    // One occupancy bitboard per colour (0 = white, 1 = black)
+    private final long[] colorBitboards = new long[2];
+
+    // Every occupied square
+    private long occupied;
+
+    // Mailbox mirror of the bitboards for constant time square lookups
+    private final int[] squares = new int[64];
+
+    // Scratch buffer for movePiece, parseUciMove and San so that checking a move does not allocate
+    final int[] moveBuffer = new int[MoveGenerator.MAX_MOVES];
+
     // Enum to represent the player's turn
     public enum Player {
         WHITE, BLACK
     }
 
     // The current player (whose turn it is)
-    private static Player move = Player.WHITE;
+    private Player move = Player.WHITE;
+
+    // Castling rights still available (see WHITE_KINGSIDE etc.)
+    private int castlingRights = WHITE_KINGSIDE | WHITE_QUEENSIDE | BLACK_KINGSIDE | BLACK_QUEENSIDE;
+
+    // The square a pawn may capture en passant on, or -1 if there is none
+    private int enPassantSquare = -1;
+
+    // Half-moves since the last capture or pawn move, and the full move number
+    private int halfmoveClock = 0;
+    private int fullmoveNumber = 1;
+
+    // Zobrist key of the position, updated incrementally (see Zobrist)
+    private long zobristKey;
+
+    // Undo stack, used as a ring so that the oldest entries are overwritten when full.
+    // Each entry holds the move, the piece it captured, the castling rights, en passant
+    // square and half-move clock packed into one int, and the Zobrist key before the move.
+    private final int[] undoMoves = new int[MAX_UNDO];
+    private final int[] undoCaptured = new int[MAX_UNDO];
+    private final int[] undoState = new int[MAX_UNDO];
+    private final long[] undoKeys = new long[MAX_UNDO];
+
+    // Index of the next free undo entry, and how many entries can still be taken back
+    private int undoTop = 0;
+    private int undoSize = 0;
+
+    // Listeners told about changed squares; replaced, never modified, when one is added
+    private BoardListener[] listeners = new BoardListener[0];
+
+    /**
+     * Creates a chessboard set up in the standard starting position.
+     */
+    public ChessBoard() {
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                if (START_POSITION[row][col] != EMPTY) {
+                    putPiece(square(row, col), START_POSITION[row][col]);
+                }
+            }
+        }
+        zobristKey ^= Zobrist.castling(castlingRights);
+    }
+
+    /**
+     * Creates an independent snapshot of another chessboard.
+     *
+     * The new board shares no state with the original, so both can be played on
+     * (for example by different threads) without affecting each other.
+     *
+     * @param other The board to copy.
+     */
+    public ChessBoard(ChessBoard other) {
+        copyPosition(other);  // A new board has no listeners to tell
+    }
+
+    /**
+     * Overwrites this board with the position held by another board.
+     *
+     * This reuses the existing arrays, so it can be called repeatedly without
+     * allocating (e.g., to reset a scratch board from a shared position).
+     *
+     * @param other The board to copy.
+     */
+    public void copyFrom(ChessBoard other) {
+        copyPosition(other);
+        fireSquaresChanged(-1L);
+    }
+
+    private void copyPosition(ChessBoard other) {
+        System.arraycopy(other.pieceBitboards, 0, pieceBitboards, 0, pieceBitboards.length);
+        System.arraycopy(other.colorBitboards, 0, colorBitboards, 0, colorBitboards.length);
+        System.arraycopy(other.squares, 0, squares, 0, squares.length);
+        occupied = other.occupied;
+        move = other.move;
+        castlingRights = other.castlingRights;
+        enPassantSquare = other.enPassantSquare;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        zobristKey = other.zobristKey;
+        undoTop = other.undoTop;
+        undoSize = other.undoSize;
+        if (undoSize > 0) {
+            System.arraycopy(other.undoMoves, 0, undoMoves, 0, MAX_UNDO);
+            System.arraycopy(other.undoCaptured, 0, undoCaptured, 0, MAX_UNDO);
+            System.arraycopy(other.undoState, 0, undoState, 0, MAX_UNDO);
+            System.arraycopy(other.undoKeys, 0, undoKeys, 0, MAX_UNDO);
+        }
+    }
+
+    /**
+     * Creates a chessboard from a position in Forsyth-Edwards Notation.
+     *
+     * @param fen The position, e.g. "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1".
+     * @return A new board holding the position.
+     * @throws IllegalArgumentException If the FEN cannot be parsed.
+     */
+    public static ChessBoard fromFen(String fen) {
+        ChessBoard board = new ChessBoard();
+        board.setFen(fen);
+        return board;
+    }
+
+    /**
+     * Replaces the position on this board with one given in Forsyth-Edwards Notation.
+     *
+     * The half-move clock and move number may be left out, in which case they default
+     * to 0 and 1. An en passant square that no pawn can capture on is dropped so that
+     * equal positions always get equal Zobrist keys. The undo stack is cleared.
+     *
+     * @param fen The position in FEN.
+     * @throws IllegalArgumentException If the FEN cannot be parsed or describes an
+     * impossible position (not one king per side, a pawn on the first or last rank, a
+     * negative counter); the board is then left unchanged.
+     */
+    public void setFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("FEN needs at least 4 fields: " + fen);
+        }
+
+        // Every field is checked before the board is touched, so a bad FEN leaves it as it was
+
+        // Piece placement, from row 0 (rank 8) down to row 7 (rank 1)
+        int[] placement = new int[64];
+        int whiteKings = 0;
+        int blackKings = 0;
+        int row = 0;
+        int col = 0;
+        for (int i = 0; i < fields[0].length(); i++) {
+            char c = fields[0].charAt(i);
+            if (c == '/') {
+                if (col != 8) {
+                    throw new IllegalArgumentException("Row " + (row + 1) + " does not have 8 squares: " + fen);
+                }
+                row++;
+                col = 0;
+            } else if (c >= '1' && c <= '8') {
+                col += c - '0';
+            } else {
+                int type = PIECE_LETTERS.indexOf(Character.toUpperCase(c));
+                if (type <= 0 || row > 7 || col > 7) {
+                    throw new IllegalArgumentException("Bad piece placement in FEN: " + fen);
+                }
+                if (type == PAWN && (row == 0 || row == 7)) {
+                    throw new IllegalArgumentException("Pawn on the first or last rank in FEN: " + fen);
+                }
+                if (type == KING) {
+                    if (Character.isUpperCase(c)) {
+                        whiteKings++;
+                    } else {
+                        blackKings++;
+                    }
+                }
+                placement[square(row, col)] = Character.isUpperCase(c) ? type : -type;
+                col++;
+            }
+        }
+        if (row != 7 || col != 8) {
+            throw new IllegalArgumentException("FEN does not describe 8 rows of 8 squares: " + fen);
+        }
+        if (whiteKings != 1 || blackKings != 1) {
+            throw new IllegalArgumentException("FEN must have exactly one king per side: " + fen);
+        }
+
+        // Side to move
+        Player side;
+        if (fields[1].equals("w")) {
+            side = Player.WHITE;
+        } else if (fields[1].equals("b")) {
+            side = Player.BLACK;
+        } else {
+            throw new IllegalArgumentException("Bad side to move in FEN: " + fen);
+        }
+
+        // Castling rights
+        int rights = 0;
+        if (!fields[2].equals("-")) {
+            for (int i = 0; i < fields[2].length(); i++) {
+                switch (fields[2].charAt(i)) {
+                    case 'K': rights |= WHITE_KINGSIDE; break;
+                    case 'Q': rights |= WHITE_QUEENSIDE; break;
+                    case 'k': rights |= BLACK_KINGSIDE; break;
+                    case 'q': rights |= BLACK_QUEENSIDE; break;
+                    default: throw new IllegalArgumentException("Bad castling rights in FEN: " + fen);
+                }
+            }
+        }
+
+        // En passant square
+        int passed = -1;
+        if (!fields[3].equals("-")) {
+            passed = parseSquare(fields[3], 0);
+            if (passed < 0 || fields[3].length() != 2) {
+                throw new IllegalArgumentException("Bad en passant square in FEN: " + fen);
+            }
+        }
+
+        // Move clocks; the half-move clock is packed into the undo stack and must not be negative
+        int halfmoves;
+        int fullmoves;
+        try {
+            halfmoves = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+            fullmoves = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad move counters in FEN: " + fen, e);
+        }
+        if (halfmoves < 0 || fullmoves < 0) {
+            throw new IllegalArgumentException("Negative move counters in FEN: " + fen);
+        }
+
+        Arrays.fill(pieceBitboards, 0L);
+        Arrays.fill(colorBitboards, 0L);
+        Arrays.fill(squares, EMPTY);
+        occupied = 0L;
+        zobristKey = 0L;
+        undoSize = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            if (placement[sq] != EMPTY) {
+                putPiece(sq, placement[sq]);
+            }
+        }
+
+        move = side;
+        if (side == Player.BLACK) {
+            zobristKey ^= Zobrist.side();
+        }
+        castlingRights = rights;
+        zobristKey ^= Zobrist.castling(castlingRights);
+
+        // The en passant square is kept only if a pawn of the side to move can capture on it
+        enPassantSquare = -1;
+        if (passed >= 0) {
+            int them = side.ordinal() ^ 1;
+            if ((Bitboards.pawnAttacks(them, passed) & pieceBitboards[side == Player.WHITE ? 0 : 6]) != 0) {
+                enPassantSquare = passed;
+                zobristKey ^= Zobrist.enPassant(passed);
+            }
+        }
+
+        halfmoveClock = halfmoves;
+        fullmoveNumber = fullmoves;
+        fireSquaresChanged(-1L);
+    }
+
+    /**
+     * Returns the current position in Forsyth-Edwards Notation.
+     *
+     * @return The position as a FEN string.
+     */
+    public String toFen() {
+        StringBuilder sb = new StringBuilder(90);
+
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int piece = squares[square(row, col)];
+                if (piece == EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    sb.append(empty);
+                    empty = 0;
+                }
+                char letter = PIECE_LETTERS.charAt(Math.abs(piece));
+                sb.append(piece > 0 ? letter : Character.toLowerCase(letter));
+            }
+            if (empty > 0) {
+                sb.append(empty);
+            }
+            if (row < 7) {
+                sb.append('/');
+            }
+        }
+
+        sb.append(move == Player.WHITE ? " w " : " b ");
+
+        if (castlingRights == 0) {
+            sb.append('-');
+        } else {
+            if ((castlingRights & WHITE_KINGSIDE) != 0) sb.append('K');
+            if ((castlingRights & WHITE_QUEENSIDE) != 0) sb.append('Q');
+            if ((castlingRights & BLACK_KINGSIDE) != 0) sb.append('k');
+            if ((castlingRights & BLACK_QUEENSIDE) != 0) sb.append('q');
+        }
+
+        sb.append(' ');
+        if (enPassantSquare >= 0) {
+            Move.appendSquare(enPassantSquare, sb);
+        } else {
+            sb.append('-');
+        }
+
+        sb.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return sb.toString();
+    }
+
+    /**
+     * Converts a row and column into a square index (0-63).
+     *
+     * @param row The row of the square (0 is the eighth rank).
+     * @param col The column of the square (0 is the a-file).
+     * @return The square index.
+     */
+    public static int square(int row, int col) {
+        return (row << 3) | col;
+    }
+
+    /**
+     * Returns the bitboard index (0-11) for a piece value.
+     *
+     * @param piece The piece value (positive for white, negative for black).
+     * @return The index into the piece bitboards.
+     */
+    static int bitboardIndex(int piece) {
+        return piece > 0 ? piece - 1 : 5 - piece;
+    }
+
+    /**
+     * Returns the piece on the given square without allocating.
+     *
+     * @param row The row of the square.
+     * @param col The column of the square.
+     * @return The piece value, or 0 if the square is empty.
+     */
+    public int getPiece(int row, int col) {
+        return squares[square(row, col)];
+    }
+
+    /**
+     * Returns the piece on the given square index without allocating.
+     *
+     * @param square The square index (0-63).
+     * @return The piece value, or 0 if the square is empty.
+     */
+    public int getPiece(int square) {
+        return squares[square];
+    }
+
+    /**
+     * Returns the bitboard for a single piece type and colour.
+     *
+     * @param piece The piece value (e.g., 1 for white pawns, -6 for the black king).
+     * @return A bitboard with one bit set for every square holding that piece.
+     */
+    public long getBitboard(int piece) {
+        return pieceBitboards[bitboardIndex(piece)];
+    }
+
+    /**
+     * Returns the occupancy bitboard for one side.
+     *
+     * @param player The side whose pieces are wanted.
+     * @return A bitboard with one bit set for every square holding a piece of that side.
+     */
+    public long getOccupancy(Player player) {
+        return colorBitboards[player.ordinal()];
+    }
+
+    /**
+     * Returns the occupancy bitboard for both sides.
+     *
+     * @return A bitboard with one bit set for every occupied square.
+     */
+    public long getOccupied() {
+        return occupied;
+    }
+
+    /**
+     * Returns the occupancy bitboard for one side by index.
+     *
+     * @param color 0 for white, 1 for black.
+     * @return The occupancy bitboard for that side.
+     */
+    long colorBitboard(int color) {
+        return colorBitboards[color];
+    }
+
+    /**
+     * Returns the castling rights that are still available.
+     *
+     * @return A combination of WHITE_KINGSIDE, WHITE_QUEENSIDE, BLACK_KINGSIDE and BLACK_QUEENSIDE.
+     */
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    /**
+     * Returns the square a pawn can capture en passant on.
+     *
+     * The square is only set after a double pawn push that an enemy pawn is standing
+     * next to, so it always names a capture that is at least pseudo-legal.
+     *
+     * @return The en passant target square, or -1 if there is none.
+     */
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    /**
+     * Returns the number of half-moves since the last capture or pawn move.
+     *
+     * @return The half-move clock.
+     */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * Returns the full move number, which starts at 1 and increases after Black moves.
+     *
+     * @return The full move number.
+     */
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * Returns the Zobrist key of the current position.
+     *
+     * The key covers the pieces, the side to move, the castling rights and the en
+     * passant file. It is kept up to date on every change, so reading it is O(1) and
+     * it can be used directly as a cache or transposition table key.
+     *
+     * @return The 64-bit Zobrist key.
+     */
+    public long getZobristKey() {
+        return zobristKey;
+    }
 
     /**
      * Returns a copy of the current chessboard as a 2D array.
      * 
-     * This method returns a deep copy of the 2D array to prevent direct modification
-     * of the internal board state by other classes.
+     * This method builds a new 2D array on every call. Callers that only need a few
+     * squares should use getPiece(row, col) instead, which does not allocate.
      *
      * @return A copy of the chessboard as a 2D integer array.
      */
     public int[][] getBoard() {
-        int[][] boardCopy = new int[board.length][];
-        for (int i = 0; i < board.length; i++) {
-            boardCopy[i] = board[i].clone();  // Clone each row for deep copy
+        int[][] boardCopy = new int[8][8];
+        for (int row = 0; row < 8; row++) {
+            System.arraycopy(squares, row << 3, boardCopy[row], 0, 8);
         }
         return boardCopy;
     }
@@ -79,78 +584,581 @@ public class ChessBoard {
      * Returns the chessboard as a one-dimensional array with the rating of the position 
      * as the last element. This can be used for machine learning models.
      *
+     * Element 64 is left at 0 here; training data files store the engine's score with
+     * each position, and TrainingRecord.readFeatures() fills it in when reading them.
+     *
      * @return The board in elements 0-63 and the move score in element 64.
      */
     public int[] getBoardArray() {
         int[] oneDimensionalBoard = new int[65];
-        // TODO: Put the rating of the move in element 64 (e.g., based on Stockfish evaluation)
-
-        for (int y = 0; y < 8; y++) {
-            for (int x = 0; x < 8; x++) {
-                oneDimensionalBoard[(8 * y) + x] = board[y][x];
-            }
-        }
-
+        getBoardArray(oneDimensionalBoard);
         return oneDimensionalBoard;
     }
 
+    /**
+     * Copies the pieces into an existing array, so that many positions can be read
+     * without creating an array for each.
+     *
+     * @param out An array of at least 64 ints, filled with the piece on each square.
+     */
+    public void getBoardArray(int[] out) {
+        System.arraycopy(squares, 0, out, 0, 64);
+    }
+
     /**
      * Moves a piece from one square to another on the chessboard.
      * 
-     * Special moves like castling are handled separately.
+     * The move must be legal for the side to move. Castling is given as the king
+     * moving two squares, en passant as the pawn moving to the empty target square,
+     * and a pawn reaching the last row is promoted to a queen. After the move the
+     * turn passes to the other player.
      *
      * @param fromRow The starting row of the piece.
      * @param fromCol The starting column of the piece.
      * @param toRow The destination row of the piece.
      * @param toCol The destination column of the piece.
+     * @return true if the move was played, false if it is not legal.
      */
-    public void movePiece(int fromRow, int fromCol, int toRow, int toCol) {
+    public boolean movePiece(int fromRow, int fromCol, int toRow, int toCol) {
         if (fromRow >= 0 && fromRow < 8 && fromCol >= 0 && fromCol < 8
                 && toRow >= 0 && toRow < 8 && toCol >= 0 && toCol < 8) {
 
-            int piece = board[fromRow][fromCol];
-            if (piece == 0) {
+            int from = square(fromRow, fromCol);
+            int to = square(toRow, toCol);
+            if (squares[from] == EMPTY) {
                 System.out.println("No piece found at the source.");
-                return;  // No piece to move
-            }
-
-            // Handle castling (king moving two squares to either side)
-            if (piece == 6 || piece == -6) {  // King
-                if (fromCol == 4 && (toCol == 6 || toCol == 2)) {
-                    if (toCol == 6) {  // Kingside castling
-                        board[fromRow][4] = 0;  // Move king
-                        board[fromRow][6] = piece;
-                        board[fromRow][7] = 0;  // Move rook
-                        board[fromRow][5] = (piece > 0) ? 2 : -2;  // Add rook
-                        System.out.println("Kingside castling executed.");
-                    } else if (toCol == 2) {  // Queenside castling
-                        board[fromRow][4] = 0;  // Move king
-                        board[fromRow][2] = piece;
-                        board[fromRow][0] = 0;  // Move rook
-                        board[fromRow][3] = (piece > 0) ? 2 : -2;  // Add rook
-                        System.out.println("Queenside castling executed.");
-                    }
-                    return;
+                return false;  // No piece to move
+            }
+
+            int count = generateLegalMoves(moveBuffer);
+            for (int i = 0; i < count; i++) {
+                // The first matching promotion generated is the queen
+                if (Move.from(moveBuffer[i]) == from && Move.to(moveBuffer[i]) == to) {
+                    makeMove(moveBuffer[i]);
+                    return true;
                 }
             }
 
-            // Regular move
-            board[fromRow][fromCol] = 0;  // Clear original square
-            board[toRow][toCol] = piece;  // Move piece to destination
+            System.out.println("Illegal move.");
         } else {
             System.out.println("Invalid move or out-of-bounds coordinates.");
         }
+        return false;
+    }
+
+    /**
+     * Writes every legal move for the side to move into the buffer as packed ints.
+     *
+     * @param moves A buffer of at least MoveGenerator.MAX_MOVES entries; it can be
+     * reused between calls.
+     * @return The number of moves written.
+     */
+    public int generateLegalMoves(int[] moves) {
+        return MoveGenerator.generateLegalMoves(this, moves);
+    }
+
+    /**
+     * Decodes a move in UCI notation (e.g., "e2e4", "e1g1" or "e7e8q") into the
+     * matching legal move for the side to move.
+     *
+     * The text is read in place and the legal moves go into a reusable buffer, so
+     * decoding does not allocate.
+     *
+     * @param uci The move in UCI notation.
+     * @return The packed move, or Move.NONE if the text is not a legal move here.
+     */
+    public int parseUciMove(CharSequence uci) {
+        return parseUciMove(uci, 0, uci.length());
+    }
+
+    /**
+     * Decodes a move in UCI notation that sits inside a longer piece of text, such as
+     * one move of a principal variation in an engine's output line.
+     *
+     * @param text The text holding the move.
+     * @param start The index of the first character of the move.
+     * @param end The index just past the last character of the move.
+     * @return The packed move, or Move.NONE if the text is not a legal move here.
+     */
+    public int parseUciMove(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length < 4 || length > 5) {
+            return Move.NONE;
+        }
+        int from = parseSquare(text, start);
+        int to = parseSquare(text, start + 2);
+        if (from < 0 || to < 0) {
+            return Move.NONE;
+        }
+        int promotion = 0;
+        if (length == 5) {
+            promotion = PIECE_LETTERS.indexOf(Character.toUpperCase(text.charAt(start + 4)));
+            if (promotion < ROOK || promotion > QUEEN) {
+                return Move.NONE;
+            }
+        }
+
+        int count = generateLegalMoves(moveBuffer);
+        for (int i = 0; i < count; i++) {
+            int m = moveBuffer[i];
+            if (Move.from(m) == from && Move.to(m) == to && Move.promotion(m) == promotion) {
+                return m;
+            }
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Reads a square name such as "e4" from two characters of a string.
+     *
+     * @param text The text holding the square name.
+     * @param index The position of the file letter.
+     * @return The square index, or -1 if the characters do not name a square.
+     */
+    private static int parseSquare(CharSequence text, int index) {
+        if (text.length() < index + 2) {
+            return -1;
+        }
+        int col = text.charAt(index) - 'a';
+        int row = '8' - text.charAt(index + 1);
+        if (col < 0 || col > 7 || row < 0 || row > 7) {
+            return -1;
+        }
+        return square(row, col);
+    }
+
+    /**
+     * Counts the leaf nodes of the legal move tree to the given depth and prints the
+     * node count, the time taken and the nodes per second.
+     *
+     * Known node counts make this a correctness check for the move generator, and the
+     * nodes per second give a throughput figure.
+     *
+     * @param depth The number of plies to search.
+     * @return The number of leaf nodes.
+     */
+    public long perft(int depth) {
+        Perft perft = new Perft(this, depth);
+        long start = System.nanoTime();
+        long nodes = perft.count(depth);
+        long elapsed = System.nanoTime() - start;
+
+        long nodesPerSecond = elapsed > 0 ? nodes * 1_000_000_000L / elapsed : 0;
+        System.out.println("Perft(" + depth + "): " + nodes + " nodes in "
+                + (elapsed / 1_000_000) + " ms (" + nodesPerSecond + " nodes/s)");
+        return nodes;
+    }
+
+    /**
+     * Determines whether the side to move is in check.
+     *
+     * @return true if the king of the side to move is attacked.
+     */
+    public boolean isInCheck() {
+        int us = move.ordinal();
+        long king = pieceBitboards[us == 0 ? 5 : 11];
+        return king != 0 && isSquareAttacked(Long.numberOfTrailingZeros(king), us ^ 1);
+    }
+
+    /**
+     * Works out whether the game is over in the current position, and why.
+     *
+     * Mate and stalemate come first, so a mate delivered on the hundredth half-move
+     * still counts as a win. Repetitions are found through the Zobrist keys on the undo
+     * stack, so only positions reached with makeMove count.
+     *
+     * @return The state of the game.
+     */
+    public GameState getGameState() {
+        if (generateLegalMoves(moveBuffer) == 0) {
+            return isInCheck() ? GameState.CHECKMATE : GameState.STALEMATE;
+        }
+        if (halfmoveClock >= 100) {
+            return GameState.FIFTY_MOVE_RULE;
+        }
+        if (countRepetitions(2) >= 2) {
+            return GameState.THREEFOLD_REPETITION;
+        }
+        if (isInsufficientMaterial()) {
+            return GameState.INSUFFICIENT_MATERIAL;
+        }
+        return GameState.ONGOING;
+    }
+
+    /**
+     * Counts how many times the current position occurred earlier in the game, with
+     * the same side to move, castling rights and en passant square.
+     *
+     * @return The number of earlier occurrences (2 means the position has now occurred
+     * three times).
+     */
+    public int getRepetitionCount() {
+        return countRepetitions(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Checks whether the current position occurred earlier in the game. A search can
+     * score such a position as a draw, since either side can repeat it again.
+     *
+     * @return true if the position has occurred before.
+     */
+    public boolean isRepetition() {
+        return countRepetitions(1) > 0;
+    }
+
+    /**
+     * Looks back through the undo stack for earlier occurrences of the current position.
+     * Only positions since the last capture or pawn move can repeat, and the search
+     * stops at a null move, which is not a move of the game.
+     *
+     * @param max The count at which to stop looking.
+     * @return The number of earlier occurrences found, at most max.
+     */
+    private int countRepetitions(int max) {
+        int limit = Math.min(halfmoveClock, undoSize);
+        int count = 0;
+        for (int plies = 1; plies <= limit; plies++) {
+            int index = (undoTop - plies) & (MAX_UNDO - 1);
+            if (undoMoves[index] == Move.NONE) {
+                break;
+            }
+            // undoKeys holds the key of the position the move was played from
+            if ((plies & 1) == 0 && undoKeys[index] == zobristKey && ++count >= max) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether neither side has enough material left to mate: king against king,
+     * king and one minor piece against king, or kings with bishops that all stand on
+     * squares of the same colour.
+     *
+     * @return true if checkmate is impossible.
+     */
+    public boolean isInsufficientMaterial() {
+        long pawnsRooksQueens = pieceBitboards[0] | pieceBitboards[1] | pieceBitboards[4]
+                | pieceBitboards[6] | pieceBitboards[7] | pieceBitboards[10];
+        if (pawnsRooksQueens != 0) {
+            return false;
+        }
+        long knights = pieceBitboards[2] | pieceBitboards[8];
+        long bishops = pieceBitboards[3] | pieceBitboards[9];
+        if (Long.bitCount(knights | bishops) <= 1) {
+            return true;
+        }
+        return knights == 0 && ((bishops & LIGHT_SQUARES) == 0 || (bishops & ~LIGHT_SQUARES) == 0);
+    }
+
+    /**
+     * Determines whether a square is attacked by one side.
+     *
+     * @param sq The square index.
+     * @param byColor 0 if white is attacking, 1 if black is attacking.
+     * @return true if any piece of that side attacks the square.
+     */
+    boolean isSquareAttacked(int sq, int byColor) {
+        return attackersOf(sq, byColor, occupied, 0L) != 0;
+    }
+
+    /**
+     * Returns the pieces of one side that attack a square, using a custom occupancy
+     * so that a move can be tested without being played.
+     *
+     * @param sq The square index.
+     * @param byColor 0 for white attackers, 1 for black attackers.
+     * @param occupancy The occupied squares to use for sliding pieces.
+     * @param excluded Squares whose pieces should be ignored (e.g., a piece just captured).
+     * @return A bitboard of the attacking pieces.
+     */
+    long attackersOf(int sq, int byColor, long occupancy, long excluded) {
+        int base = byColor * 6;
+        long queens = pieceBitboards[base + 4];
+        long attackers = (Bitboards.pawnAttacks(byColor ^ 1, sq) & pieceBitboards[base])
+                | (Bitboards.knightAttacks(sq) & pieceBitboards[base + 2])
+                | (Bitboards.kingAttacks(sq) & pieceBitboards[base + 5])
+                | (Bitboards.bishopAttacks(sq, occupancy) & (pieceBitboards[base + 3] | queens))
+                | (Bitboards.rookAttacks(sq, occupancy) & (pieceBitboards[base + 1] | queens));
+        return attackers & ~excluded;
+    }
+
+    /**
+     * Plays a legal move, records it on the undo stack and passes the turn to the
+     * other player.
+     *
+     * The move is not checked; it must come from generateLegalMoves (or otherwise be
+     * known to be legal). Nothing is allocated, so this can be called millions of
+     * times per second from a search or replay loop.
+     *
+     * @param m The packed move (see Move).
+     */
+    public void makeMove(int m) {
+        int from = Move.from(m);
+        int to = Move.to(m);
+        int flag = Move.flag(m);
+        int piece = squares[from];
+        int us = piece > 0 ? 0 : 1;
+
+        undoMoves[undoTop] = m;
+        undoCaptured[undoTop] = flag == Move.EN_PASSANT ? -piece : squares[to];
+        undoState[undoTop] = castlingRights | ((enPassantSquare + 1) << 4) | (halfmoveClock << 11);
+        undoKeys[undoTop] = zobristKey;
+        undoTop = (undoTop + 1) & (MAX_UNDO - 1);
+        if (undoSize < MAX_UNDO) {
+            undoSize++;
+        }
+
+        halfmoveClock++;
+        if (flag == Move.EN_PASSANT) {
+            takePiece(to + (us == 0 ? 8 : -8));
+            halfmoveClock = 0;
+        } else if (squares[to] != EMPTY) {
+            takePiece(to);
+            halfmoveClock = 0;
+        }
+
+        relocatePiece(from, to);
+
+        if (Move.promotion(m) != 0) {
+            takePiece(to);
+            putPiece(to, us == 0 ? Move.promotion(m) : -Move.promotion(m));
+        } else if (flag == Move.CASTLING) {
+            if (to > from) {
+                relocatePiece(from + 3, from + 1);  // Kingside rook
+            } else {
+                relocatePiece(from - 4, from - 1);  // Queenside rook
+            }
+        }
+
+        int rights = castlingRights & CASTLING_MASK[from] & CASTLING_MASK[to];
+        if (rights != castlingRights) {
+            zobristKey ^= Zobrist.castling(castlingRights) ^ Zobrist.castling(rights);
+            castlingRights = rights;
+        }
+
+        // Only record an en passant square that an enemy pawn can actually capture on
+        if (enPassantSquare >= 0) {
+            zobristKey ^= Zobrist.enPassant(enPassantSquare);
+            enPassantSquare = -1;
+        }
+        if (flag == Move.DOUBLE_PUSH) {
+            int passed = (from + to) >> 1;
+            if ((Bitboards.pawnAttacks(us, passed) & pieceBitboards[us == 0 ? 6 : 0]) != 0) {
+                enPassantSquare = passed;
+                zobristKey ^= Zobrist.enPassant(passed);
+            }
+        }
+
+        if (piece == PAWN || piece == -PAWN) {
+            halfmoveClock = 0;
+        }
+        if (us == 1) {
+            fullmoveNumber++;
+        }
+        move = us == 0 ? Player.BLACK : Player.WHITE;
+        zobristKey ^= Zobrist.side();
+
+        if (listeners.length != 0) {
+            fireSquaresChanged(squaresTouchedBy(m));
+        }
+    }
+
+    /**
+     * Takes back the last move played with makeMove (or movePiece), restoring the
+     * position exactly as it was, including castling rights, the en passant square,
+     * the move clocks and the Zobrist key.
+     *
+     * @throws IllegalStateException If there is no move left to take back.
+     */
+    public void unmakeMove() {
+        if (undoSize == 0) {
+            throw new IllegalStateException("No move to take back.");
+        }
+        undoTop = (undoTop - 1) & (MAX_UNDO - 1);
+        undoSize--;
+
+        int m = undoMoves[undoTop];
+        int from = Move.from(m);
+        int to = Move.to(m);
+        int flag = Move.flag(m);
+        int captured = undoCaptured[undoTop];
+        int us = move == Player.WHITE ? 1 : 0;  // The side that made the move
+
+        if (Move.promotion(m) != 0) {
+            takePiece(to);
+            putPiece(to, us == 0 ? PAWN : -PAWN);
+        } else if (flag == Move.CASTLING) {
+            if (to > from) {
+                relocatePiece(from + 1, from + 3);  // Kingside rook
+            } else {
+                relocatePiece(from - 1, from - 4);  // Queenside rook
+            }
+        }
+
+        relocatePiece(to, from);
+
+        if (flag == Move.EN_PASSANT) {
+            putPiece(to + (us == 0 ? 8 : -8), captured);
+        } else if (captured != EMPTY) {
+            putPiece(to, captured);
+        }
+
+        int state = undoState[undoTop];
+        castlingRights = state & 0xF;
+        enPassantSquare = ((state >>> 4) & 0x7F) - 1;
+        halfmoveClock = state >>> 11;
+        if (us == 1) {
+            fullmoveNumber--;
+        }
+        move = us == 0 ? Player.WHITE : Player.BLACK;
+        zobristKey = undoKeys[undoTop];
+
+        if (listeners.length != 0) {
+            fireSquaresChanged(squaresTouchedBy(m));
+        }
+    }
+
+    /**
+     * Passes the turn without moving a piece (a "null move"), as used by null-move
+     * pruning in a search. Any en passant square is cleared. The null move goes on the
+     * undo stack and must be taken back with unmakeNullMove.
+     */
+    public void makeNullMove() {
+        undoMoves[undoTop] = Move.NONE;
+        undoCaptured[undoTop] = EMPTY;
+        undoState[undoTop] = castlingRights | ((enPassantSquare + 1) << 4) | (halfmoveClock << 11);
+        undoKeys[undoTop] = zobristKey;
+        undoTop = (undoTop + 1) & (MAX_UNDO - 1);
+        if (undoSize < MAX_UNDO) {
+            undoSize++;
+        }
+
+        if (enPassantSquare >= 0) {
+            zobristKey ^= Zobrist.enPassant(enPassantSquare);
+            enPassantSquare = -1;
+        }
+        halfmoveClock++;
+        move = move == Player.WHITE ? Player.BLACK : Player.WHITE;
+        zobristKey ^= Zobrist.side();
+    }
+
+    /**
+     * Takes back a null move played with makeNullMove.
+     *
+     * @throws IllegalStateException If there is no move left to take back.
+     */
+    public void unmakeNullMove() {
+        if (undoSize == 0) {
+            throw new IllegalStateException("No move to take back.");
+        }
+        undoTop = (undoTop - 1) & (MAX_UNDO - 1);
+        undoSize--;
+
+        int state = undoState[undoTop];
+        enPassantSquare = ((state >>> 4) & 0x7F) - 1;
+        halfmoveClock = state >>> 11;
+        move = move == Player.WHITE ? Player.BLACK : Player.WHITE;
+        zobristKey = undoKeys[undoTop];
+    }
+
+    /**
+     * Returns how many moves can currently be taken back with unmakeMove.
+     *
+     * @return The number of moves on the undo stack (at most MAX_UNDO).
+     */
+    public int getUndoDepth() {
+        return undoSize;
+    }
+
+    /**
+     * Returns a move from the undo stack.
+     *
+     * @param pliesAgo 1 for the last move played, 2 for the one before, and so on, up
+     * to getUndoDepth().
+     * @return The packed move, or Move.NONE for a null move.
+     */
+    public int getUndoMove(int pliesAgo) {
+        if (pliesAgo < 1 || pliesAgo > undoSize) {
+            throw new IndexOutOfBoundsException("No move " + pliesAgo + " plies ago; undo depth is " + undoSize);
+        }
+        return undoMoves[(undoTop - pliesAgo) & (MAX_UNDO - 1)];
+    }
+
+    /**
+     * Registers a listener to be told which squares change from now on.
+     *
+     * Listeners belong to this board only; copies made with the copy constructor start
+     * without any, so a search working on a copy never calls them.
+     *
+     * @param listener The listener to add.
+     */
+    public void addBoardListener(BoardListener listener) {
+        BoardListener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+        grown[listeners.length] = listener;
+        listeners = grown;
+    }
+
+    /**
+     * Removes a listener added with addBoardListener.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeBoardListener(BoardListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                BoardListener[] shrunk = new BoardListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, shrunk, 0, i);
+                System.arraycopy(listeners, i + 1, shrunk, i, shrunk.length - i);
+                listeners = shrunk;
+                return;
+            }
+        }
+    }
+
+    private void fireSquaresChanged(long changedSquares) {
+        for (BoardListener listener : listeners) {
+            listener.squaresChanged(this, changedSquares);
+        }
+    }
+
+    /**
+     * Returns the squares a move changes: its own two squares, the rook's squares when
+     * castling, and the captured pawn's square for en passant.
+     *
+     * @param m The packed move.
+     * @return One bit per changed square.
+     */
+    public static long squaresTouchedBy(int m) {
+        int from = Move.from(m);
+        int to = Move.to(m);
+        long squares = (1L << from) | (1L << to);
+        int flag = Move.flag(m);
+        if (flag == Move.EN_PASSANT) {
+            squares |= 1L << ((from & ~7) | (to & 7));  // Beside the from square, on the to file
+        } else if (flag == Move.CASTLING) {
+            squares |= to > from ? (1L << (from + 3)) | (1L << (from + 1)) : (1L << (from - 4)) | (1L << (from - 1));
+        }
+        return squares;
     }
 
     /**
      * Removes a piece from the specified square on the chessboard.
      *
+     * Editing the board clears the undo stack, since earlier moves can no longer be
+     * taken back reliably. It also drops the en passant square, and the castling rights
+     * that depend on the square if it is a king's or rook's home square.
+     *
      * @param row The row of the piece to remove.
      * @param col The column of the piece to remove.
      */
     public void removePiece(int row, int col) {
         if (row >= 0 && row < 8 && col >= 0 && col < 8) {
-            board[row][col] = 0;  // Set the square to empty (0)
+            int sq = square(row, col);
+            if (squares[sq] != EMPTY) {
+                takePiece(sq);  // Set the square to empty (0)
+            }
+            squareEdited(sq);
         } else {
             System.out.println("Invalid coordinates for removing piece.");
         }
@@ -159,18 +1167,99 @@ public class ChessBoard {
     /**
      * Adds a piece to the specified square on the chessboard.
      *
+     * Editing the board clears the undo stack, since earlier moves can no longer be
+     * taken back reliably. It also drops the en passant square, and the castling rights
+     * that depend on the square if it is a king's or rook's home square.
+     *
      * @param row The row where the piece will be placed.
      * @param col The column where the piece will be placed.
      * @param piece The piece to add (use positive values for white, negative for black).
      */
     public void addPiece(int row, int col, int piece) {
-        if (row >= 0 && row < 8 && col >= 0 && col < 8) {
-            board[row][col] = piece;  // Place the piece on the board
+        if (row >= 0 && row < 8 && col >= 0 && col < 8 && piece >= -KING && piece <= KING) {
+            int sq = square(row, col);
+            if (squares[sq] != EMPTY) {
+                takePiece(sq);  // Replace whatever was on the square
+            }
+            if (piece != EMPTY) {
+                putPiece(sq, piece);  // Place the piece on the board
+            }
+            squareEdited(sq);
         } else {
             System.out.println("Invalid coordinates for adding piece.");
         }
     }
 
+    /**
+     * Brings the rest of the position in line after a square was edited by hand: the
+     * castling rights and en passant square may no longer be true, and earlier moves
+     * cannot be taken back. The Zobrist key is kept in step.
+     *
+     * @param sq The square that was edited.
+     */
+    private void squareEdited(int sq) {
+        int rights = castlingRights & CASTLING_MASK[sq];
+        if (rights != castlingRights) {
+            zobristKey ^= Zobrist.castling(castlingRights) ^ Zobrist.castling(rights);
+            castlingRights = rights;
+        }
+        if (enPassantSquare >= 0) {
+            zobristKey ^= Zobrist.enPassant(enPassantSquare);
+            enPassantSquare = -1;
+        }
+        undoSize = 0;
+        fireSquaresChanged(1L << sq);
+    }
+
+    /**
+     * Places a piece on an empty square, updating the bitboards and the mailbox.
+     *
+     * @param sq The square index.
+     * @param piece The piece value.
+     */
+    private void putPiece(int sq, int piece) {
+        long bit = 1L << sq;
+        pieceBitboards[bitboardIndex(piece)] |= bit;
+        colorBitboards[piece > 0 ? 0 : 1] |= bit;
+        occupied |= bit;
+        squares[sq] = piece;
+        zobristKey ^= Zobrist.piece(piece, sq);
+    }
+
+    /**
+     * Removes the piece standing on an occupied square.
+     *
+     * @param sq The square index.
+     * @return The piece that was removed.
+     */
+    private int takePiece(int sq) {
+        int piece = squares[sq];
+        long bit = 1L << sq;
+        pieceBitboards[bitboardIndex(piece)] &= ~bit;
+        colorBitboards[piece > 0 ? 0 : 1] &= ~bit;
+        occupied &= ~bit;
+        squares[sq] = EMPTY;
+        zobristKey ^= Zobrist.piece(piece, sq);
+        return piece;
+    }
+
+    /**
+     * Moves the piece on one square to an empty square.
+     *
+     * @param from The square the piece leaves.
+     * @param to The empty square the piece lands on.
+     */
+    private void relocatePiece(int from, int to) {
+        int piece = squares[from];
+        long fromTo = (1L << from) | (1L << to);
+        pieceBitboards[bitboardIndex(piece)] ^= fromTo;
+        colorBitboards[piece > 0 ? 0 : 1] ^= fromTo;
+        occupied ^= fromTo;
+        squares[from] = EMPTY;
+        squares[to] = piece;
+        zobristKey ^= Zobrist.piece(piece, from) ^ Zobrist.piece(piece, to);
+    }
+
     /**
      * Switches the turn to the next player (White to Black or Black to White).
      */
@@ -180,6 +1269,7 @@ public class ChessBoard {
         } else {
             move = Player.WHITE;
         }
+        zobristKey ^= Zobrist.side();
     }
 
     /**
@@ -202,7 +1292,7 @@ public class ChessBoard {
 
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
-                int piece = board[row][col];
+                int piece = squares[square(row, col)];
 
                 // Convert piece value to a character
                 switch (piece) {
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Enum: GameState
+ *
+ * The state of a game as seen from its current position: still going, or over and
+ * why. See ChessBoard.getGameState().
+ */
+
+package com.george.board;
+
+public enum GameState {
+    ONGOING("ongoing"),
+    CHECKMATE("checkmate"),
+    STALEMATE("stalemate"),
+    THREEFOLD_REPETITION("threefold repetition"),
+    FIFTY_MOVE_RULE("fifty-move rule"),
+    INSUFFICIENT_MATERIAL("insufficient material");
+
+    // Engine games longer than this are stopped and scored as draws, since the rules
+    // alone may let them run on for thousands of moves
+    public static final int DEFAULT_MAX_PLIES = 600;
+
+    private final String description;
+
+    GameState(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return true if the game has ended.
+     */
+    public boolean isOver() {
+        return this != ONGOING;
+    }
+
+    /**
+     * @return true if the game has ended in a draw.
+     */
+    public boolean isDraw() {
+        return isOver() && this != CHECKMATE;
+    }
+
+    /**
+     * @return A short description, such as "threefold repetition".
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
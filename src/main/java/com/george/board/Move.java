@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: Move
+ *
+ * This class packs a chess move into a single int so that moves can be stored in
+ * plain int arrays and passed around without creating objects.
+ *
+ * Layout of the packed value:
+ * - Bits 0-5:   the square the piece moves from (0-63).
+ * - Bits 6-11:  the square the piece moves to (0-63).
+ * - Bits 12-14: the piece type a pawn promotes to (0 if the move is not a promotion).
+ * - Bits 15-16: a flag marking double pawn pushes, en passant captures and castling.
+ *
+ * Squares use the same numbering as ChessBoard (a8 = 0, h1 = 63). Moves can be written
+ * in UCI notation (e.g., "e2e4" or "e7e8q") straight into a reusable StringBuilder;
+ * ChessBoard.parseUciMove reads them back.
+ */
+
+package com.george.board;
+
+public final class Move {
+
+    // The value used when there is no move
+    public static final int NONE = 0;
+
+    // Flags stored in bits 15-16
+    public static final int NORMAL = 0;
+    public static final int DOUBLE_PUSH = 1;
+    public static final int EN_PASSANT = 2;
+    public static final int CASTLING = 3;
+
+    private Move() {
+        // Static helpers only
+    }
+
+    /**
+     * Packs a plain move with no promotion and no special flag.
+     *
+     * @param from The square the piece moves from.
+     * @param to The square the piece moves to.
+     * @return The packed move.
+     */
+    public static int of(int from, int to) {
+        return from | (to << 6);
+    }
+
+    /**
+     * Packs a move with a promotion piece and a flag.
+     *
+     * @param from The square the piece moves from.
+     * @param to The square the piece moves to.
+     * @param promotion The piece type to promote to (e.g., ChessBoard.QUEEN), or 0.
+     * @param flag One of NORMAL, DOUBLE_PUSH, EN_PASSANT or CASTLING.
+     * @return The packed move.
+     */
+    public static int of(int from, int to, int promotion, int flag) {
+        return from | (to << 6) | (promotion << 12) | (flag << 15);
+    }
+
+    /**
+     * @param move A packed move.
+     * @return The square the piece moves from.
+     */
+    public static int from(int move) {
+        return move & 0x3F;
+    }
+
+    /**
+     * @param move A packed move.
+     * @return The square the piece moves to.
+     */
+    public static int to(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    /**
+     * @param move A packed move.
+     * @return The piece type a pawn promotes to, or 0 if the move is not a promotion.
+     */
+    public static int promotion(int move) {
+        return (move >>> 12) & 0x7;
+    }
+
+    /**
+     * @param move A packed move.
+     * @return The special move flag (NORMAL, DOUBLE_PUSH, EN_PASSANT or CASTLING).
+     */
+    public static int flag(int move) {
+        return (move >>> 15) & 0x3;
+    }
+
+    /**
+     * Appends a move in UCI notation (e.g., "e2e4", "e7e8q") to a reusable builder.
+     *
+     * @param move A packed move.
+     * @param out The builder to append to.
+     * @return The same builder, for chaining.
+     */
+    public static StringBuilder appendUci(int move, StringBuilder out) {
+        appendSquare(from(move), out);
+        appendSquare(to(move), out);
+        switch (promotion(move)) {
+            case ChessBoard.QUEEN: out.append('q'); break;
+            case ChessBoard.ROOK: out.append('r'); break;
+            case ChessBoard.BISHOP: out.append('b'); break;
+            case ChessBoard.KNIGHT: out.append('n'); break;
+            default: break;
+        }
+        return out;
+    }
+
+    /**
+     * Returns a move in UCI notation. This allocates a new string; use appendUci in
+     * loops.
+     *
+     * @param move A packed move.
+     * @return The move in UCI notation, or "0000" for Move.NONE.
+     */
+    public static String toUci(int move) {
+        if (move == NONE) {
+            return "0000";
+        }
+        return appendUci(move, new StringBuilder(5)).toString();
+    }
+
+    /**
+     * Appends the name of a square (e.g., "e4") to a builder.
+     *
+     * @param sq The square index.
+     * @param out The builder to append to.
+     */
+    public static void appendSquare(int sq, StringBuilder out) {
+        out.append((char) ('a' + (sq & 7))).append((char) ('8' - (sq >> 3)));
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: MoveGenerator
+ *
+ * This class lists every legal move in a position. Moves are written as packed ints
+ * (see Move) into a buffer supplied by the caller, so generating moves never allocates.
+ *
+ * Pseudo-legal moves are generated first. A move is then only checked for leaving the
+ * king in check when it could possibly do so: king moves, en passant captures, any move
+ * made while in check, and moves by pieces standing on a line through the king.
+ * Those checks are done on a modified occupancy word, so the board is never touched.
+ */
+
+package com.george.board;
+
+import static com.george.board.ChessBoard.BISHOP;
+import static com.george.board.ChessBoard.EMPTY;
+import static com.george.board.ChessBoard.KING;
+import static com.george.board.ChessBoard.KNIGHT;
+import static com.george.board.ChessBoard.PAWN;
+import static com.george.board.ChessBoard.QUEEN;
+import static com.george.board.ChessBoard.ROOK;
+
+public final class MoveGenerator {
+
+    // No legal chess position has more than 218 moves
+    public static final int MAX_MOVES = 256;
+
+    private MoveGenerator() {
+        // Static helpers only
+    }
+
+    /**
+     * Writes every legal move for the side to move into the buffer.
+     *
+     * @param board The position to generate moves for.
+     * @param moves A buffer of at least MAX_MOVES entries.
+     * @return The number of moves written; 0 if the side to move has no king, as on a
+     * board being edited.
+     */
+    public static int generateLegalMoves(ChessBoard board, int[] moves) {
+        int us = board.currentPlayer().ordinal();
+        int sign = us == 0 ? 1 : -1;
+        long own = board.colorBitboard(us);
+        long enemy = board.colorBitboard(us ^ 1);
+        long occupied = board.getOccupied();
+        long king = board.getBitboard(sign * KING);
+        if (king == 0) {
+            return 0;
+        }
+        int kingSquare = Long.numberOfTrailingZeros(king);
+        boolean inCheck = board.isSquareAttacked(kingSquare, us ^ 1);
+
+        // Pieces off every line through the king cannot be pinned
+        long mayBePinned = Bitboards.lines(kingSquare);
+
+        int count = 0;
+
+        // Pawns
+        int push = us == 0 ? -8 : 8;
+        int startRow = us == 0 ? 6 : 1;
+        int lastRow = us == 0 ? 0 : 7;
+        int enPassant = board.getEnPassantSquare();
+        long pawns = board.getBitboard(sign * PAWN);
+        while (pawns != 0) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            boolean check = inCheck || (mayBePinned & (1L << from)) != 0;
+
+            int forward = from + push;
+            if (board.getPiece(forward) == EMPTY) {
+                count = addPawnMove(board, moves, count, from, forward, lastRow, check, us, kingSquare);
+                if ((from >> 3) == startRow && board.getPiece(forward + push) == EMPTY) {
+                    count = add(board, moves, count, Move.of(from, forward + push, 0, Move.DOUBLE_PUSH), check, us, kingSquare);
+                }
+            }
+
+            long captures = Bitboards.pawnAttacks(us, from) & enemy;
+            while (captures != 0) {
+                int to = Long.numberOfTrailingZeros(captures);
+                captures &= captures - 1;
+                count = addPawnMove(board, moves, count, from, to, lastRow, check, us, kingSquare);
+            }
+
+            if (enPassant >= 0 && (Bitboards.pawnAttacks(us, from) & (1L << enPassant)) != 0) {
+                count = add(board, moves, count, Move.of(from, enPassant, 0, Move.EN_PASSANT), true, us, kingSquare);
+            }
+        }
+
+        // Knights, bishops, rooks and queens
+        for (int type = ROOK; type <= QUEEN; type++) {
+            long pieces = board.getBitboard(sign * type);
+            while (pieces != 0) {
+                int from = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+                boolean check = inCheck || (mayBePinned & (1L << from)) != 0;
+
+                long targets = attacks(type, from, occupied) & ~own;
+                while (targets != 0) {
+                    int to = Long.numberOfTrailingZeros(targets);
+                    targets &= targets - 1;
+                    count = add(board, moves, count, Move.of(from, to), check, us, kingSquare);
+                }
+            }
+        }
+
+        // King
+        long targets = Bitboards.kingAttacks(kingSquare) & ~own;
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            count = add(board, moves, count, Move.of(kingSquare, to), true, us, kingSquare);
+        }
+
+        // Castling: the king may not start in, pass through or land in check
+        if (!inCheck) {
+            int rights = board.getCastlingRights();
+            int home = us == 0 ? 60 : 4;
+            int kingside = us == 0 ? ChessBoard.WHITE_KINGSIDE : ChessBoard.BLACK_KINGSIDE;
+            int queenside = us == 0 ? ChessBoard.WHITE_QUEENSIDE : ChessBoard.BLACK_QUEENSIDE;
+
+            if (kingSquare == home) {
+                if ((rights & kingside) != 0
+                        && board.getPiece(home + 3) == sign * ROOK
+                        && (occupied & ((1L << (home + 1)) | (1L << (home + 2)))) == 0
+                        && !board.isSquareAttacked(home + 1, us ^ 1)
+                        && !board.isSquareAttacked(home + 2, us ^ 1)) {
+                    moves[count++] = Move.of(home, home + 2, 0, Move.CASTLING);
+                }
+                if ((rights & queenside) != 0
+                        && board.getPiece(home - 4) == sign * ROOK
+                        && (occupied & ((1L << (home - 1)) | (1L << (home - 2)) | (1L << (home - 3)))) == 0
+                        && !board.isSquareAttacked(home - 1, us ^ 1)
+                        && !board.isSquareAttacked(home - 2, us ^ 1)) {
+                    moves[count++] = Move.of(home, home - 2, 0, Move.CASTLING);
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the squares attacked by a knight, bishop, rook or queen.
+     */
+    private static long attacks(int type, int sq, long occupied) {
+        switch (type) {
+            case KNIGHT: return Bitboards.knightAttacks(sq);
+            case BISHOP: return Bitboards.bishopAttacks(sq, occupied);
+            case ROOK: return Bitboards.rookAttacks(sq, occupied);
+            default: return Bitboards.queenAttacks(sq, occupied);
+        }
+    }
+
+    /**
+     * Adds a pawn move, expanding it into the four promotions when it reaches the last row.
+     */
+    private static int addPawnMove(ChessBoard board, int[] moves, int count, int from, int to,
+            int lastRow, boolean check, int us, int kingSquare) {
+        if ((to >> 3) == lastRow) {
+            count = add(board, moves, count, Move.of(from, to, QUEEN, Move.NORMAL), check, us, kingSquare);
+            count = add(board, moves, count, Move.of(from, to, KNIGHT, Move.NORMAL), check, us, kingSquare);
+            count = add(board, moves, count, Move.of(from, to, ROOK, Move.NORMAL), check, us, kingSquare);
+            return add(board, moves, count, Move.of(from, to, BISHOP, Move.NORMAL), check, us, kingSquare);
+        }
+        return add(board, moves, count, Move.of(from, to), check, us, kingSquare);
+    }
+
+    /**
+     * Adds a move to the buffer, first verifying that it does not leave the king in
+     * check when the caller says it might.
+     */
+    private static int add(ChessBoard board, int[] moves, int count, int move,
+            boolean check, int us, int kingSquare) {
+        if (!check || !leavesKingInCheck(board, move, us, kingSquare)) {
+            moves[count++] = move;
+        }
+        return count;
+    }
+
+    /**
+     * Determines whether a pseudo-legal move would leave the mover's king attacked.
+     *
+     * The move is simulated on a copy of the occupancy word only: the moving piece is
+     * lifted, dropped on its target, and any captured piece is excluded from the
+     * attackers.
+     */
+    private static boolean leavesKingInCheck(ChessBoard board, int move, int us, int kingSquare) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        long fromBit = 1L << from;
+        long toBit = 1L << to;
+        long captured = toBit;
+
+        long occupied = (board.getOccupied() & ~fromBit) | toBit;
+        if (Move.flag(move) == Move.EN_PASSANT) {
+            captured = 1L << (to + (us == 0 ? 8 : -8));
+            occupied &= ~captured;
+        }
+
+        int target = from == kingSquare ? to : kingSquare;
+        return board.attackersOf(target, us ^ 1, occupied, captured) != 0;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: Perft
+ *
+ * This class counts the leaf nodes of the legal move tree from a position (perft).
+ * Comparing the counts with published values checks the move generator, and timing
+ * the count measures its throughput.
+ *
+ * One move buffer is allocated per ply up front, and moves are played and taken back
+ * on a single board with makeMove and unmakeMove, so the count itself does not allocate.
+ *
+ * Usage: java com.george.board.Perft [depth] [fen]
+ */
+
+package com.george.board;
+
+import java.util.Arrays;
+
+public class Perft {
+
+    // The board the moves are played on, and one move buffer per ply
+    private final ChessBoard board;
+    private final int[][] moves;
+
+    /**
+     * Prepares a perft count from the given position.
+     *
+     * @param root The position to count from; it is copied and left untouched.
+     * @param maxDepth The deepest count that will be requested.
+     */
+    public Perft(ChessBoard root, int maxDepth) {
+        board = new ChessBoard(root);
+        moves = new int[maxDepth + 1][MoveGenerator.MAX_MOVES];
+    }
+
+    /**
+     * Counts the leaf nodes to the given depth.
+     *
+     * @param depth The number of plies, at most the maxDepth given to the constructor.
+     * @return The number of leaf nodes.
+     */
+    public long count(int depth) {
+        return count(0, depth);
+    }
+
+    private long count(int ply, int depth) {
+        int[] buffer = moves[ply];
+        int count = board.generateLegalMoves(buffer);
+
+        if (depth <= 1) {
+            return depth == 1 ? count : 1;
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(buffer[i]);
+            nodes += count(ply + 1, depth - 1);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Runs perft and prints the nodes per second.
+     *
+     * @param args Optional depth (default 5), followed by an optional FEN (default
+     * the starting position).
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String fen = args.length > 1 ? String.join(" ", Arrays.copyOfRange(args, 1, args.length))
+                : ChessBoard.START_FEN;
+        ChessBoard.fromFen(fen).perft(depth);
+    }
+}
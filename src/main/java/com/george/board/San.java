@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: San
+ *
+ * This class writes and reads moves in Standard Algebraic Notation (SAN), the notation
+ * used by PGN files: "e4", "Nbd7", "exd5", "O-O", "e8=Q+", "Qh4#".
+ *
+ * SAN depends on the position: a move names its piece and target square, with just
+ * enough of the starting square to tell it apart from other legal moves, and a suffix
+ * when it gives check or mate. The board is used to find those other moves and is
+ * left unchanged. Both directions use the board's own move buffer, so they do not
+ * allocate and a board must not be shared between threads while they run.
+ */
+
+package com.george.board;
+
+import java.nio.charset.StandardCharsets;
+
+public final class San {
+
+    // SAN letters indexed by piece type (pawns have none)
+    private static final String PIECE_LETTERS = "  RNBQK";
+
+    private San() {
+        // Static helpers only
+    }
+
+    /**
+     * Writes a legal move in SAN.
+     *
+     * @param board The position before the move; the move is played and taken back to
+     * find out whether it gives check, so the board must not be in use elsewhere.
+     * @param move The packed move (see Move).
+     * @param out The builder to append to.
+     * @return The same builder.
+     */
+    public static StringBuilder append(ChessBoard board, int move, StringBuilder out) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int type = Math.abs(board.getPiece(from));
+
+        if (Move.flag(move) == Move.CASTLING) {
+            out.append((to & 7) == 6 ? "O-O" : "O-O-O");
+        } else if (type == ChessBoard.PAWN) {
+            if ((from & 7) != (to & 7)) {
+                out.append((char) ('a' + (from & 7))).append('x');
+            }
+            Move.appendSquare(to, out);
+            if (Move.promotion(move) != 0) {
+                out.append('=').append(PIECE_LETTERS.charAt(Move.promotion(move)));
+            }
+        } else {
+            out.append(PIECE_LETTERS.charAt(type));
+            appendDisambiguation(board, move, type, out);
+            if (board.getPiece(to) != ChessBoard.EMPTY) {
+                out.append('x');
+            }
+            Move.appendSquare(to, out);
+        }
+
+        board.makeMove(move);
+        if (board.isInCheck()) {
+            out.append(board.generateLegalMoves(board.moveBuffer) == 0 ? '#' : '+');
+        }
+        board.unmakeMove();
+        return out;
+    }
+
+    /**
+     * Writes a legal move in SAN.
+     *
+     * @param board The position before the move.
+     * @param move The packed move (see Move).
+     * @return The move in SAN.
+     */
+    public static String toSan(ChessBoard board, int move) {
+        return append(board, move, new StringBuilder(8)).toString();
+    }
+
+    /**
+     * Reads a move in SAN.
+     *
+     * @param board The position the move is played in; it is left unchanged.
+     * @param san The move, such as "Nbd7" or "exd8=Q+".
+     * @return The packed move, or Move.NONE if the text is not a legal move here.
+     */
+    public static int parse(ChessBoard board, String san) {
+        byte[] text = san.getBytes(StandardCharsets.ISO_8859_1);
+        return parse(board, text, 0, text.length);
+    }
+
+    /**
+     * Reads a move in SAN straight from the bytes of a PGN file, without creating a
+     * string. Check and mate signs and annotations such as "!?" are ignored, castling
+     * may be written with zeros, and a promotion may leave out the '='.
+     *
+     * @param board The position the move is played in; it is left unchanged.
+     * @param text The bytes holding the move.
+     * @param start The index of the first byte of the move.
+     * @param end The index just past the last byte of the move.
+     * @return The packed move, or Move.NONE if the text is not a legal move here or
+     * fits more than one.
+     */
+    public static int parse(ChessBoard board, byte[] text, int start, int end) {
+        while (end > start && (text[end - 1] == '+' || text[end - 1] == '#' || text[end - 1] == '!' || text[end - 1] == '?')) {
+            end--;
+        }
+        if (end - start < 2) {
+            return Move.NONE;
+        }
+
+        int[] moves = board.moveBuffer;
+        int count = board.generateLegalMoves(moves);
+
+        // Castling: "O-O" or "O-O-O"
+        if (text[start] == 'O' || text[start] == '0') {
+            int length = end - start;
+            int col = length == 3 ? 6 : length == 5 ? 2 : -1;
+            for (int i = 0; i < count; i++) {
+                if (Move.flag(moves[i]) == Move.CASTLING && (Move.to(moves[i]) & 7) == col) {
+                    return moves[i];
+                }
+            }
+            return Move.NONE;
+        }
+
+        int type = ChessBoard.PAWN;
+        int letter = PIECE_LETTERS.indexOf(text[start]);
+        if (letter > 0) {
+            type = letter;
+            start++;
+        }
+
+        int promotion = 0;
+        if (type == ChessBoard.PAWN && end - start > 2) {
+            promotion = PIECE_LETTERS.indexOf(text[end - 1]);
+            if (promotion > 0 && promotion < ChessBoard.KING) {
+                end--;
+                if (text[end - 1] == '=') {
+                    end--;
+                }
+            } else {
+                promotion = 0;
+            }
+        }
+        if (end - start < 2) {
+            return Move.NONE;
+        }
+
+        int toCol = text[end - 2] - 'a';
+        int toRow = '8' - text[end - 1];
+        if (toCol < 0 || toCol > 7 || toRow < 0 || toRow > 7) {
+            return Move.NONE;
+        }
+        int to = ChessBoard.square(toRow, toCol);
+
+        // Whatever is left between the piece and the target square narrows down the start
+        int fromCol = -1;
+        int fromRow = -1;
+        for (int i = start; i < end - 2; i++) {
+            byte c = text[i];
+            if (c >= 'a' && c <= 'h') {
+                fromCol = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRow = '8' - c;
+            } else if (c != 'x' && c != ':' && c != '-') {
+                return Move.NONE;
+            }
+        }
+
+        int found = Move.NONE;
+        for (int i = 0; i < count; i++) {
+            int m = moves[i];
+            int from = Move.from(m);
+            if (Move.to(m) != to || Math.abs(board.getPiece(from)) != type || Move.flag(m) == Move.CASTLING) {
+                continue;
+            }
+            if ((fromCol >= 0 && (from & 7) != fromCol) || (fromRow >= 0 && (from >> 3) != fromRow)) {
+                continue;
+            }
+            if (Move.promotion(m) != promotion) {
+                // A promotion without a piece is taken as a queen
+                if (promotion != 0 || Move.promotion(m) != ChessBoard.QUEEN) {
+                    continue;
+                }
+            }
+            if (found != Move.NONE) {
+                return Move.NONE;  // Ambiguous
+            }
+            found = m;
+        }
+        return found;
+    }
+
+    /**
+     * Adds the file, rank or both of the starting square when another piece of the same
+     * type can reach the same square.
+     */
+    private static void appendDisambiguation(ChessBoard board, int move, int type, StringBuilder out) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int[] moves = board.moveBuffer;
+        int count = board.generateLegalMoves(moves);
+
+        boolean ambiguous = false;
+        boolean sameFile = false;
+        boolean sameRank = false;
+        for (int i = 0; i < count; i++) {
+            int other = Move.from(moves[i]);
+            if (other != from && Move.to(moves[i]) == to && Math.abs(board.getPiece(other)) == type) {
+                ambiguous = true;
+                sameFile |= (other & 7) == (from & 7);
+                sameRank |= (other >> 3) == (from >> 3);
+            }
+        }
+
+        if (!ambiguous) {
+            return;
+        }
+        if (!sameFile) {
+            out.append((char) ('a' + (from & 7)));
+        } else if (!sameRank) {
+            out.append((char) ('8' - (from >> 3)));
+        } else {
+            Move.appendSquare(from, out);
+        }
+    }
+}
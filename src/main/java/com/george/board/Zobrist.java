@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: Zobrist
+ *
+ * This class holds the random keys used to hash chess positions. A position's key is
+ * the XOR of one key per piece on its square, one for the side to move (when Black is
+ * to move), one for the current set of castling rights and one for the file of the en
+ * passant square (when there is one).
+ *
+ * Because XOR is its own inverse, ChessBoard keeps the key up to date by XOR-ing keys in
+ * and out as pieces and rights change, instead of rescanning the board.
+ *
+ * The keys come from a fixed seed, so the same position hashes to the same value in
+ * every run and keys can be stored on disk.
+ */
+
+package com.george.board;
+
+public final class Zobrist {
+
+    // One key per piece (bitboard index 0-11) and square
+    private static final long[][] PIECES = new long[12][64];
+
+    // One key per combination of castling rights
+    private static final long[] CASTLING = new long[16];
+
+    // One key per en passant file
+    private static final long[] EN_PASSANT = new long[8];
+
+    // XOR-ed in when Black is to move
+    private static final long SIDE;
+
+    static {
+        long seed = 0x2545F4914F6CDD1DL;
+        for (long[] keys : PIECES) {
+            for (int sq = 0; sq < 64; sq++) {
+                keys[sq] = seed = next(seed);
+            }
+        }
+        for (int i = 0; i < CASTLING.length; i++) {
+            CASTLING[i] = seed = next(seed);
+        }
+        CASTLING[0] = 0;  // No rights leaves the key unchanged
+        for (int i = 0; i < EN_PASSANT.length; i++) {
+            EN_PASSANT[i] = seed = next(seed);
+        }
+        SIDE = next(seed);
+    }
+
+    private Zobrist() {
+        // Static helpers only
+    }
+
+    // SplitMix64 step: returns the next pseudo-random value after the given one
+    private static long next(long state) {
+        long z = state + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @param piece The piece value (positive for white, negative for black).
+     * @param sq The square index.
+     * @return The key for that piece standing on that square.
+     */
+    public static long piece(int piece, int sq) {
+        return PIECES[ChessBoard.bitboardIndex(piece)][sq];
+    }
+
+    /**
+     * @param rights A combination of ChessBoard castling right flags.
+     * @return The key for that set of castling rights.
+     */
+    public static long castling(int rights) {
+        return CASTLING[rights];
+    }
+
+    /**
+     * @param sq The en passant square.
+     * @return The key for the file of that square.
+     */
+    public static long enPassant(int sq) {
+        return EN_PASSANT[sq & 7];
+    }
+
+    /**
+     * @return The key XOR-ed in when Black is to move.
+     */
+    public static long side() {
+        return SIDE;
+    }
+
+    /**
+     * Computes the key of a position from scratch by scanning every square. This is
+     * slow compared to ChessBoard.getZobristKey() and is meant for checking it.
+     *
+     * @param board The position to hash.
+     * @return The Zobrist key of the position.
+     */
+    public static long compute(ChessBoard board) {
+        long key = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            if (board.getPiece(sq) != ChessBoard.EMPTY) {
+                key ^= piece(board.getPiece(sq), sq);
+            }
+        }
+        key ^= castling(board.getCastlingRights());
+        if (board.getEnPassantSquare() >= 0) {
+            key ^= enPassant(board.getEnPassantSquare());
+        }
+        if (board.currentPlayer() == ChessBoard.Player.BLACK) {
+            key ^= SIDE;
+        }
+        return key;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: PolyglotBook
+ *
+ * This class reads an opening book in the Polyglot format (.bin) and picks book moves
+ * for a ChessBoard, so that known opening positions need no engine search.
+ *
+ * A book is a list of 16-byte entries sorted by position key: the Polyglot key
+ * (8 bytes), the move (2 bytes), its weight (2 bytes) and learning data (4 bytes, not
+ * used), all big-endian. The file is memory-mapped and searched in place, so a lookup
+ * is a binary search over the mapping and takes microseconds whatever the book's size.
+ *
+ * Polyglot moves are from and to squares with rows counted from rank 1, plus a
+ * promotion piece. Castling is written as the king taking its own rook (e1h1); the
+ * moves are matched against the legal moves of the position, which also guards
+ * against a book entry for a different position with the same key.
+ *
+ * Usage: PolyglotBook <book file> [FEN]
+ * lists the book moves for a position (the starting position by default).
+ */
+
+package com.george.book;
+
+import com.george.board.ChessBoard;
+import com.george.board.Move;
+import com.george.board.MoveGenerator;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.random.RandomGenerator;
+
+public class PolyglotBook implements AutoCloseable {
+
+    // Where the book is looked for by default
+    public static final String DEFAULT_FILE = "book/book.bin";
+
+    // Size of one entry in bytes
+    public static final int ENTRY_BYTES = 16;
+
+    // Most entries read for one position
+    private static final int MAX_ENTRIES = MoveGenerator.MAX_MOVES;
+
+    // Our piece types indexed by Polyglot promotion code (1 knight .. 4 queen)
+    private static final int[] PROMOTION = {0, ChessBoard.KNIGHT, ChessBoard.BISHOP, ChessBoard.ROOK, ChessBoard.QUEEN};
+
+    private final FileChannel channel;
+    private final MappedByteBuffer entries;
+    private final int size;
+
+    /**
+     * Opens and maps a Polyglot book.
+     *
+     * @param file The book file.
+     * @throws IOException If the file cannot be opened or mapped, or is too large.
+     */
+    public PolyglotBook(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Book " + file + " is larger than 2 GB");
+            }
+            size = (int) (length / ENTRY_BYTES);
+            entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) size * ENTRY_BYTES);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the book at its default place (DEFAULT_FILE), if it is there.
+     *
+     * @return The book, or null if there is none.
+     */
+    public static PolyglotBook openDefault() {
+        Path book = Path.of(DEFAULT_FILE);
+        if (!book.toFile().isFile()) {
+            System.out.println("No opening book (" + DEFAULT_FILE + ")");
+            return null;
+        }
+        try {
+            return new PolyglotBook(book);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @return The number of entries in the book.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the book moves for a position. Entries that are not legal moves here are
+     * left out.
+     *
+     * @param board The position.
+     * @param moves Receives the packed moves; at least MoveGenerator.MAX_MOVES long.
+     * @param weights Receives the weight of each move; as long as moves.
+     * @return The number of moves found.
+     */
+    public int getMoves(ChessBoard board, int[] moves, int[] weights) {
+        long key = PolyglotKeys.key(board);
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        int legalCount = -1;
+        int count = 0;
+        for (int i = firstEntry(key); i < size && entries.getLong(i * ENTRY_BYTES) == key && count < MAX_ENTRIES; i++) {
+            if (legalCount < 0) {
+                legalCount = board.generateLegalMoves(legal);
+            }
+            int move = toMove(board, entries.getShort(i * ENTRY_BYTES + 8) & 0xFFFF, legal, legalCount);
+            if (move != Move.NONE) {
+                moves[count] = move;
+                weights[count] = entries.getShort(i * ENTRY_BYTES + 10) & 0xFFFF;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Picks a book move at random, each move with a chance in proportion to its weight.
+     *
+     * @param board The position.
+     * @param random The source of randomness.
+     * @return The packed move, or Move.NONE if the position is not in the book.
+     */
+    public int pickMove(ChessBoard board, RandomGenerator random) {
+        int[] moves = new int[MAX_ENTRIES];
+        int[] weights = new int[MAX_ENTRIES];
+        int count = getMoves(board, moves, weights);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += weights[i];
+        }
+        if (total == 0) {
+            return Move.NONE;  // No moves, or only ones the book says never to play
+        }
+        long pick = random.nextLong(total);
+        for (int i = 0; i < count; i++) {
+            pick -= weights[i];
+            if (pick < 0) {
+                return moves[i];
+            }
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Binary search for the first entry with the key, comparing keys as unsigned numbers
+     * as Polyglot sorts them.
+     *
+     * @return The index of the first entry whose key is not below the given key.
+     */
+    private int firstEntry(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(entries.getLong(middle * ENTRY_BYTES), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Turns a Polyglot move into the matching legal move.
+     *
+     * @return The packed move, or Move.NONE if no legal move matches.
+     */
+    private static int toMove(ChessBoard board, int code, int[] legal, int legalCount) {
+        int to = ChessBoard.square(7 - ((code >> 3) & 7), code & 7);
+        int from = ChessBoard.square(7 - ((code >> 9) & 7), (code >> 6) & 7);
+        int promotionCode = (code >> 12) & 7;
+        int promotion = promotionCode < PROMOTION.length ? PROMOTION[promotionCode] : -1;
+
+        // King takes own rook: castling, with the king's target square in our moves
+        boolean castling = Math.abs(board.getPiece(from)) == ChessBoard.KING
+                && board.getPiece(to) != ChessBoard.EMPTY && (board.getPiece(to) > 0) == (board.getPiece(from) > 0);
+        if (castling) {
+            to = (to & 7) == 7 ? from + 2 : from - 2;
+        }
+
+        for (int i = 0; i < legalCount; i++) {
+            int m = legal[i];
+            if (Move.from(m) == from && Move.to(m) == to && Move.promotion(m) == promotion
+                    && (Move.flag(m) == Move.CASTLING) == castling) {
+                return m;
+            }
+        }
+        return Move.NONE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Lists the book moves for a position with their weights.
+     *
+     * @param args <book file> [FEN]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: PolyglotBook <book file> [FEN]");
+            return;
+        }
+        ChessBoard board = args.length > 1 ? ChessBoard.fromFen(args[1]) : new ChessBoard();
+        try (PolyglotBook book = new PolyglotBook(Path.of(args[0]))) {
+            int[] moves = new int[MAX_ENTRIES];
+            int[] weights = new int[MAX_ENTRIES];
+            int count = book.getMoves(board, moves, weights);
+            System.out.printf("%s  key %016x  %d of %d entries%n", board.toFen(), PolyglotKeys.key(board), count, book.size());
+            for (int i = 0; i < count; i++) {
+                System.out.println("  " + Move.toUci(moves[i]) + "  weight " + weights[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,533 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: DatasetGenerator
+ *
+ * This class turns games into training data: it walks every position of every game
+ * from a GameSource, has Stockfish score it, and appends a TrainingRecord (the
+ * position, the score, the engine's best move and the game's result) to a training
+ * data file.
+ *
+ * Each worker thread borrows one engine from a StockfishPool and scores whole games
+ * with it. Games finish out of order, so finished games wait until all earlier ones
+ * are written; the file therefore always holds complete games in source order. Every
+ * so many games the file is synced to disk and a small checkpoint file next to it
+ * records how many games and records are safe. If the job stops for any reason,
+ * running it again cuts the file back to the checkpoint, skips the games already done
+ * and carries on.
+ *
+ * With a PositionSet, each position is looked up by its Zobrist key before it is
+ * scored and positions seen before are left out, which saves the engine time that
+ * duplicates (openings, common endgames) would cost. In self-play a duplicate still
+ * needs a move to go on with, which comes from a search of only a few nodes. Keys are
+ * added to the set only when their game is written, so a game that is skipped after a
+ * failure leaves nothing behind; when games in progress at the same time share a
+ * position it may be scored twice, but it is written once. When a job is resumed the
+ * set is rebuilt from the positions already in the file.
+ *
+ * Self-play sources are played out here: a few random moves for variety, chosen by a
+ * seed and the game number so a run can be repeated, and then the move the engine
+ * found while scoring each position.
+ *
+ * Usage: DatasetGenerator <output file> <selfplay:games | PGN file | UCI games file> [limits] [engines] [stockfish path] [dedup MB]
+ */
+
+package com.george.dataset;
+
+import com.george.board.ChessBoard;
+import com.george.board.GameState;
+import com.george.board.Move;
+import com.george.board.MoveGenerator;
+import com.george.engine.SearchResult;
+import com.george.pgn.PgnGame;
+import com.george.pgn.PgnReader;
+import com.george.stockfish.SearchLimits;
+import com.george.stockfish.StockfishConnector;
+import com.george.stockfish.StockfishPool;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+
+public class DatasetGenerator {
+
+    // How often the file is synced and the checkpoint saved
+    public static final int DEFAULT_CHECKPOINT_GAMES = 100;
+
+    // Random moves at the start of each self-play game
+    public static final int DEFAULT_RANDOM_PLIES = 8;
+
+    // Search used only to pick the next move in a self-play position that is not recorded
+    public static final SearchLimits DEFAULT_DUPLICATE_LIMITS = SearchLimits.nodes(1000);
+
+    // Memory for the dedup set when run from the command line (0 turns it off)
+    public static final long DEFAULT_DEDUP_MEGABYTES = 256;
+
+    // Marks a game that could not be scored; it is counted as done but writes nothing
+    private static final ScoredGame SKIPPED = new ScoredGame(null);
+
+    private final StockfishPool pool;
+    private final SearchLimits limits;
+    private final int workers;
+    private int checkpointGames = DEFAULT_CHECKPOINT_GAMES;
+    private int randomPlies = DEFAULT_RANDOM_PLIES;
+    private int maxPlies = GameState.DEFAULT_MAX_PLIES;
+    private long seed = 1;
+    private PositionSet dedup;
+    private SearchLimits duplicateLimits = DEFAULT_DUPLICATE_LIMITS;
+
+    // State of the running job, guarded by this
+    private GameSource source;
+    private TrainingDataWriter writer;
+    private Path checkpointFile;
+    private long firstGame;  // Games done before this run started
+    private long nextRead;  // Games taken from the source in this run
+    private long nextWrite;  // Games written in this run
+    private final TreeMap<Long, ScoredGame> finished = new TreeMap<>();
+    private IOException failure;
+    private long startNanos;
+
+    /**
+     * Creates a generator.
+     *
+     * @param pool The engines that score the positions.
+     * @param limits How long each position is searched.
+     * @param workers The number of games scored at the same time; each borrows one
+     * engine from the pool.
+     */
+    public DatasetGenerator(StockfishPool pool, SearchLimits limits, int workers) {
+        this.pool = pool;
+        this.limits = limits;
+        this.workers = workers;
+    }
+
+    /**
+     * @param games The number of games between syncs of the output file.
+     */
+    public void setCheckpointGames(int games) {
+        this.checkpointGames = Math.max(1, games);
+    }
+
+    /**
+     * @param plies The number of random moves that start each self-play game.
+     */
+    public void setRandomPlies(int plies) {
+        this.randomPlies = plies;
+    }
+
+    /**
+     * @param plies The length at which a self-play game is stopped.
+     */
+    public void setMaxPlies(int plies) {
+        this.maxPlies = plies;
+    }
+
+    /**
+     * @param seed The seed for the random moves of self-play games.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param dedup The positions to leave out because they have been seen before, or
+     * null to score every position. The positions of each game are added to it when
+     * the game is written.
+     */
+    public void setDedup(PositionSet dedup) {
+        this.dedup = dedup;
+    }
+
+    /**
+     * @param limits The search used to choose the next move from a self-play position
+     * that is a duplicate, and so is not scored with the full limits.
+     */
+    public void setDuplicateLimits(SearchLimits limits) {
+        this.duplicateLimits = limits;
+    }
+
+    /**
+     * @param output A training data file.
+     * @return The checkpoint file kept next to it.
+     */
+    public static Path checkpointFile(Path output) {
+        return output.resolveSibling(output.getFileName() + ".checkpoint");
+    }
+
+    /**
+     * Scores every position of every game from the source and appends them to the
+     * output file, resuming from its checkpoint if there is one.
+     *
+     * @param source The games. The same source must be given when resuming.
+     * @param output The training data file.
+     * @return The number of records in the file when done.
+     * @throws IOException If the file cannot be written, or already holds records but
+     * has lost its checkpoint.
+     * @throws InterruptedException If the thread is interrupted while the games are scored.
+     */
+    public synchronized long generate(GameSource source, Path output) throws IOException, InterruptedException {
+        checkpointFile = checkpointFile(output);
+        long games = 0;
+        long records = 0;
+        if (Files.exists(checkpointFile) && Files.exists(output)) {
+            Properties checkpoint = new Properties();
+            try (Reader in = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+                checkpoint.load(in);
+            }
+            games = Long.parseLong(checkpoint.getProperty("games", "0"));
+            records = Long.parseLong(checkpoint.getProperty("records", "0"));
+            System.out.println("Resuming " + output + " after " + games + " games, " + records + " records");
+        } else if (Files.exists(output) && Files.size(output) > TrainingDataWriter.HEADER_BYTES) {
+            // Starting over would cut the file down to its header
+            throw new IOException(output + " already holds records but has no checkpoint " + checkpointFile
+                    + "; restore the checkpoint or delete the file to start over");
+        }
+
+        this.source = source;
+        this.writer = new TrainingDataWriter(output, records);
+        this.firstGame = games;
+        this.nextRead = 0;
+        this.nextWrite = 0;
+        this.finished.clear();
+        this.failure = null;
+        this.startNanos = System.nanoTime();
+        try {
+            if (dedup != null && records > 0) {
+                rebuildDedup(output);
+            }
+            if (source.skip(games) < games) {
+                System.out.println("The source has no games left after " + games);
+            }
+
+            Thread[] threads = new Thread[workers];
+            for (int i = 0; i < workers; i++) {
+                threads[i] = new Thread(this::work, "dataset-" + i);
+                threads[i].start();
+            }
+            awaitWorkers(threads);
+            if (failure != null) {
+                throw failure;
+            }
+            checkpoint();
+            return writer.getRecordCount();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Adds the positions already in the output file to the dedup set, so that a resumed
+     * job does not score them again.
+     */
+    private void rebuildDedup(Path output) throws IOException {
+        try (PositionStore store = new PositionStore(output)) {
+            PositionStore.Cursor cursor = store.cursor();
+            while (cursor.next()) {
+                dedup.add(cursor.getZobristKey());
+            }
+        }
+        dedup.resetStatistics();
+        System.out.println("Dedup set rebuilt from " + dedup.size() + " positions");
+    }
+
+    /**
+     * Waits for the worker threads without holding the lock they need.
+     */
+    private void awaitWorkers(Thread[] threads) throws InterruptedException {
+        while (true) {
+            boolean running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+            if (!running) {
+                return;
+            }
+            wait(1000);
+        }
+    }
+
+    /**
+     * The loop of a worker thread: take the next game, score it, hand it in.
+     */
+    private void work() {
+        StockfishConnector engine = null;
+        try {
+            while (true) {
+                long index;
+                PgnGame game;
+                synchronized (this) {
+                    // Do not run too far ahead of a slow game that is still being scored
+                    while (failure == null && nextRead - nextWrite >= 4L * workers) {
+                        wait();
+                    }
+                    if (failure != null || (game = source.nextGame()) == null) {
+                        notifyAll();
+                        return;
+                    }
+                    index = nextRead++;
+                }
+
+                if (engine == null) {
+                    engine = pool.acquire();
+                }
+                ScoredGame scored;
+                try {
+                    scored = score(engine, game, firstGame + index);
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();  // Skip the game and carry on with a fresh engine
+                    pool.release(engine);
+                    engine = null;
+                    scored = SKIPPED;
+                }
+                finish(index, scored);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Wake the other workers, which may be waiting for a game this one never hands in
+            synchronized (this) {
+                if (failure == null) {
+                    failure = e instanceof IOException io ? io : new IOException("Dataset worker failed", e);
+                }
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            // Stop; the games done so far stay in the file
+        } finally {
+            if (engine != null) {
+                pool.release(engine);
+            }
+        }
+    }
+
+    /**
+     * Has the engine score every position of a game, playing it out first if it comes
+     * from a self-play source.
+     */
+    private ScoredGame score(StockfishConnector engine, PgnGame game, long gameNumber) throws IOException, InterruptedException {
+        ScoredGame scored = new ScoredGame(game);
+        ChessBoard board = game.startPosition();
+        if (source.playsOut()) {
+            SplittableRandom random = new SplittableRandom(seed ^ gameNumber * 0x9E3779B97F4A7C15L);
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            for (int ply = 0; ply < randomPlies; ply++) {
+                int count = board.generateLegalMoves(moves);
+                if (count == 0) {
+                    break;
+                }
+                int move = moves[random.nextInt(count)];
+                board.makeMove(move);
+                game.addMove(move);
+                scored.firstScored++;
+            }
+            while (true) {
+                GameState state = board.getGameState();
+                if (state.isOver()) {
+                    boolean whiteToMove = board.currentPlayer() == ChessBoard.Player.WHITE;
+                    game.setResult(state.isDraw() ? PgnGame.DRAW : whiteToMove ? PgnGame.BLACK_WINS : PgnGame.WHITE_WINS);
+                    break;
+                }
+                if (game.getMoveCount() >= maxPlies) {
+                    game.setResult(PgnGame.DRAW);
+                    break;
+                }
+                // A duplicate is not recorded, so a short search to go on playing is enough
+                boolean seen = dedup != null && dedup.contains(board.getZobristKey());
+                SearchResult result = search(engine, board, seen ? duplicateLimits : limits);
+                if (result.getBestMove() == Move.NONE) {
+                    // makeMove would corrupt the board; the game is skipped instead
+                    throw new IOException("Stockfish gave no move in " + board.toFen());
+                }
+                if (seen) {
+                    scored.skip();
+                } else {
+                    scored.add(result);
+                }
+                board.makeMove(result.getBestMove());
+                game.addMove(result.getBestMove());
+            }
+        } else {
+            for (int i = 0; i < game.getMoveCount(); i++) {
+                if (dedup != null && dedup.contains(board.getZobristKey())) {
+                    scored.skip();
+                } else {
+                    scored.add(search(engine, board, limits));
+                }
+                board.makeMove(game.getMove(i));
+            }
+        }
+        return scored;
+    }
+
+    private static SearchResult search(StockfishConnector engine, ChessBoard board, SearchLimits limits) throws IOException, InterruptedException {
+        try {
+            return engine.go(board, limits).get();
+        } catch (ExecutionException e) {
+            throw new IOException("Stockfish search failed", e.getCause());
+        }
+    }
+
+    /**
+     * Hands in a scored game and writes out every game that is now next in order.
+     */
+    private synchronized void finish(long index, ScoredGame game) throws IOException {
+        finished.put(index, game);
+        ScoredGame next;
+        while ((next = finished.remove(nextWrite)) != null) {
+            if (next != SKIPPED) {
+                write(next);
+            }
+            nextWrite++;
+            if (nextWrite % checkpointGames == 0) {
+                checkpoint();
+            }
+        }
+        notifyAll();
+    }
+
+    private void write(ScoredGame scored) throws IOException {
+        PgnGame game = scored.game;
+        ChessBoard board = game.startPosition();
+        int result = TrainingRecord.result(game.getResult());
+        for (int i = 0; i < game.getMoveCount(); i++) {
+            int scoreIndex = i - scored.firstScored;
+            if (scoreIndex >= 0) {
+                // Skipped positions are already in the set and are counted as duplicates
+                boolean added = dedup == null || dedup.add(board.getZobristKey());
+                if (added && scored.bestMoves[scoreIndex] != Move.NONE) {
+                    writer.write(board, scored.scores[scoreIndex], scored.bestMoves[scoreIndex], result);
+                }
+            }
+            board.makeMove(game.getMove(i));
+        }
+    }
+
+    /**
+     * Syncs the output file and saves the checkpoint. The checkpoint is written to a
+     * temporary file and moved into place, so it is never seen half written.
+     */
+    private synchronized void checkpoint() throws IOException {
+        writer.sync();
+        long games = firstGame + nextWrite;
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("games", Long.toString(games));
+        checkpoint.setProperty("records", Long.toString(writer.getRecordCount()));
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            checkpoint.store(out, "Training data progress");
+        }
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%d games, %d records (%.1f games/s)%n", games, writer.getRecordCount(),
+                seconds > 0 ? nextWrite / seconds : 0.0);
+        if (dedup != null) {
+            System.out.println("  dedup: " + dedup);
+        }
+    }
+
+    /**
+     * The scores of one game's positions, kept until the game can be written.
+     */
+    private static final class ScoredGame {
+        private final PgnGame game;
+        private int firstScored;  // Positions before this one were random moves
+        private int[] scores = new int[64];
+        private int[] bestMoves = new int[64];
+        private int count;
+
+        private ScoredGame(PgnGame game) {
+            this.game = game;
+        }
+
+        private void add(SearchResult result) {
+            add(result.getScore(), result.getBestMove());
+        }
+
+        // Marks a position that is left out
+        private void skip() {
+            add(0, Move.NONE);
+        }
+
+        private void add(int score, int bestMove) {
+            if (count == scores.length) {
+                scores = Arrays.copyOf(scores, 2 * count);
+                bestMoves = Arrays.copyOf(bestMoves, 2 * count);
+            }
+            scores[count] = score;
+            bestMoves[count] = bestMove;
+            count++;
+        }
+    }
+
+    /**
+     * Opens the games named on the command line: "selfplay:<games>", a file ending in
+     * ".pgn", or a file of UCI games.
+     */
+    private static GameSource openSource(String name) throws IOException {
+        if (name.startsWith("selfplay:")) {
+            return GameSource.selfPlay(Long.parseLong(name.substring(9)));
+        }
+        if (name.toLowerCase().endsWith(".pgn")) {
+            return GameSource.pgn(new PgnReader(Path.of(name)));
+        }
+        return GameSource.uciGames(Files.newBufferedReader(Path.of(name), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Generates training data from the command line.
+     *
+     * @param args <output file> <selfplay:games | PGN file | UCI games file> [limits] [engines] [stockfish path] [dedup MB]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: DatasetGenerator <output file> <selfplay:games | PGN file | UCI games file> [limits] [engines] [stockfish path] [dedup MB]");
+            return;
+        }
+        Path output = Path.of(args[0]);
+        SearchLimits limits = SearchLimits.parse(args.length > 2 ? args[2] : "depth=8");
+        int engines = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        String path = args.length > 4 ? args[4] : StockfishConnector.DEFAULT_PATH;
+        long dedupMegabytes = args.length > 5 ? Long.parseLong(args[5]) : DEFAULT_DEDUP_MEGABYTES;
+
+        long start = System.nanoTime();
+        try (GameSource source = openSource(args[1]);
+             StockfishPool pool = new StockfishPool(engines, path)) {
+            DatasetGenerator generator = new DatasetGenerator(pool, limits, engines);
+            if (dedupMegabytes > 0) {
+                generator.setDedup(new PositionSet(dedupMegabytes << 20));
+            }
+            long records = generator.generate(source, output);
+            System.out.printf("%d records in %s (%.1f s)%n", records, output, (System.nanoTime() - start) / 1e9);
+        }
+    }
+}
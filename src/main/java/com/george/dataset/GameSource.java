@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Interface: GameSource
+ *
+ * This interface supplies the games a DatasetGenerator walks through, one at a time.
+ * Sources are read from a single thread, in order, so that a job can be resumed by
+ * skipping the games it has already finished.
+ *
+ * Three sources are built in: games read from a PGN file, games read from a text file
+ * of UCI moves, and self-play, where each game is only a starting position that the
+ * generator plays out with the engines scoring it.
+ */
+
+package com.george.dataset;
+
+import com.george.board.ChessBoard;
+import com.george.board.Move;
+import com.george.pgn.PgnGame;
+import com.george.pgn.PgnReader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface GameSource extends Closeable {
+
+    /**
+     * @return The next game, or null when there are no more.
+     * @throws IOException If the games cannot be read.
+     */
+    PgnGame nextGame() throws IOException;
+
+    /**
+     * @return true if the games are starting positions to be played out by the
+     * engines, false if their moves are given.
+     */
+    default boolean playsOut() {
+        return false;
+    }
+
+    /**
+     * Skips games, for example the ones a resumed job has already written.
+     *
+     * @param games The number of games to skip.
+     * @return The number of games actually skipped (fewer at the end of the source).
+     * @throws IOException If the games cannot be read.
+     */
+    default long skip(long games) throws IOException {
+        long skipped = 0;
+        while (skipped < games && nextGame() != null) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    default void close() throws IOException {
+        // Nothing to release
+    }
+
+    /**
+     * Creates a source of self-play games: each one is the standard starting position,
+     * played out by the generator.
+     *
+     * @param games The number of games.
+     * @return The source.
+     */
+    static GameSource selfPlay(long games) {
+        return new GameSource() {
+            private long remaining = games;
+
+            @Override
+            public PgnGame nextGame() {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining--;
+                PgnGame game = new PgnGame();
+                game.setTag("Event", "Self-play");
+                return game;
+            }
+
+            @Override
+            public boolean playsOut() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Creates a source that reads the games of a PGN file. The moves are parsed in
+     * parallel ahead of the generator (see PgnReader).
+     *
+     * @param reader The reader, closed with the source.
+     * @return The source.
+     */
+    static GameSource pgn(PgnReader reader) {
+        return new GameSource() {
+            @Override
+            public PgnGame nextGame() throws IOException {
+                return reader.nextGame();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * Creates a source that reads one game per line: moves in UCI notation separated by
+     * spaces, played from the starting position, or "fen <FEN> moves <moves>" to start
+     * from another position. Blank lines and lines starting with '#' are skipped.
+     *
+     * @param in The reader, closed with the source.
+     * @return The source.
+     */
+    static GameSource uciGames(BufferedReader in) {
+        return new GameSource() {
+            private final ChessBoard board = new ChessBoard();
+            private int lineNumber;
+
+            @Override
+            public PgnGame nextGame() throws IOException {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    lineNumber++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+
+                    PgnGame game = new PgnGame();
+                    int start = 0;
+                    if (line.startsWith("fen ")) {
+                        int moves = line.indexOf(" moves ");
+                        String fen = line.substring(4, moves < 0 ? line.length() : moves).trim();
+                        try {
+                            board.setFen(fen);
+                        } catch (IllegalArgumentException e) {
+                            throw new IOException("Bad FEN on line " + lineNumber, e);
+                        }
+                        game.setStartFen(fen);
+                        start = moves < 0 ? line.length() : moves + 7;
+                    } else {
+                        board.setFen(ChessBoard.START_FEN);
+                    }
+
+                    int length = line.length();
+                    while (start < length) {
+                        int end = line.indexOf(' ', start);
+                        if (end < 0) {
+                            end = length;
+                        }
+                        if (end > start) {
+                            int move = board.parseUciMove(line, start, end);
+                            if (move == Move.NONE) {
+                                throw new IOException("Illegal move " + line.substring(start, end) + " on line " + lineNumber);
+                            }
+                            board.makeMove(move);
+                            game.addMove(move);
+                        }
+                        start = end + 1;
+                    }
+                    return game;
+                }
+                return null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+}
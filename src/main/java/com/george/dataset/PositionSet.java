@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: PositionSet
+ *
+ * This class remembers which positions have been seen, by their 64-bit Zobrist key,
+ * so that DatasetGenerator does not pay for a Stockfish search on a position it has
+ * already scored. Opening positions and common endgames turn up over and over again,
+ * so a large share of a big game collection is duplicates.
+ *
+ * The set is an open-addressing hash table of primitive longs with linear probing.
+ * It is stored off the Java heap in direct buffers of up to 1 GB each, so it costs
+ * nothing to the garbage collector and is not limited by the heap size (it is by
+ * -XX:MaxDirectMemorySize). Keys are used as their own hash, since Zobrist keys are
+ * already random; 0 marks an empty slot.
+ *
+ * The memory is fixed when the set is created. Once the table is 3/4 full, new keys
+ * are no longer stored: add() still answers "new" for them, so their positions are
+ * scored as if there were no set, and getOverflow() counts them.
+ */
+
+package com.george.dataset;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+public class PositionSet {
+
+    // Slots per direct buffer: 2^27 longs = 1 GB
+    private static final int BLOCK_SHIFT = 27;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+
+    // Stored instead of a key of 0, which marks empty slots
+    private static final long ZERO_KEY = 0x9E3779B97F4A7C15L;
+
+    private final LongBuffer[] blocks;
+    private final long mask;
+    private final long maxKeys;
+
+    // Statistics, guarded by this
+    private long keys;
+    private long lookups;
+    private long duplicates;
+    private long overflow;
+
+    /**
+     * Creates an empty set that uses at most the given amount of memory.
+     *
+     * @param memoryBytes The memory budget; the table gets the largest power of two
+     * slots (8 bytes each) that fits, and at least 1024.
+     */
+    public PositionSet(long memoryBytes) {
+        long slots = Long.highestOneBit(Math.max(1024, memoryBytes / Long.BYTES));
+        mask = slots - 1;
+        maxKeys = slots - slots / 4;
+
+        int blockSlots = (int) Math.min(slots, 1L << BLOCK_SHIFT);
+        blocks = new LongBuffer[(int) (slots / blockSlots)];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = ByteBuffer.allocateDirect(blockSlots * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+    }
+
+    /**
+     * Adds a position's key to the set.
+     *
+     * @param key The Zobrist key of the position.
+     * @return true if the position has not been seen before (or the set is full), false
+     * if it is a duplicate.
+     */
+    public synchronized boolean add(long key) {
+        if (key == 0) {
+            key = ZERO_KEY;
+        }
+        lookups++;
+        long slot = key & mask;
+        while (true) {
+            LongBuffer block = blocks[(int) (slot >>> BLOCK_SHIFT)];
+            int index = (int) (slot & BLOCK_MASK);
+            long stored = block.get(index);
+            if (stored == key) {
+                duplicates++;
+                return false;
+            }
+            if (stored == 0) {
+                if (keys >= maxKeys) {
+                    overflow++;
+                } else {
+                    block.put(index, key);
+                    keys++;
+                }
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @param key The Zobrist key of a position.
+     * @return true if the position is in the set.
+     */
+    public synchronized boolean contains(long key) {
+        if (key == 0) {
+            key = ZERO_KEY;
+        }
+        long slot = key & mask;
+        while (true) {
+            long stored = blocks[(int) (slot >>> BLOCK_SHIFT)].get((int) (slot & BLOCK_MASK));
+            if (stored == key) {
+                return true;
+            }
+            if (stored == 0) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return The number of keys stored.
+     */
+    public synchronized long size() {
+        return keys;
+    }
+
+    /**
+     * @return The number of keys the set can store.
+     */
+    public long getCapacity() {
+        return maxKeys;
+    }
+
+    /**
+     * @return The number of calls to add().
+     */
+    public synchronized long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return The number of calls to add() that found a duplicate.
+     */
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return The number of new keys that were not stored because the set was full.
+     */
+    public synchronized long getOverflow() {
+        return overflow;
+    }
+
+    /**
+     * @return The share of add() calls that found a duplicate, between 0 and 1.
+     */
+    public synchronized double getDuplicateRatio() {
+        return lookups > 0 ? (double) duplicates / lookups : 0.0;
+    }
+
+    /**
+     * Sets the lookup, duplicate and overflow counts back to 0, keeping the keys.
+     */
+    public synchronized void resetStatistics() {
+        lookups = 0;
+        duplicates = 0;
+        overflow = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d positions, %d duplicates (%.1f%%), %d of %d keys stored%s", lookups, duplicates,
+                100 * getDuplicateRatio(), keys, maxKeys, overflow > 0 ? ", " + overflow + " not stored (full)" : "");
+    }
+}
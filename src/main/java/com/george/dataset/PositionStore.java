@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: PositionStore
+ *
+ * This class reads a training data file (see TrainingDataWriter) by memory-mapping
+ * it. Positions are never copied out of the mapping: a Cursor points at one record at
+ * a time and its getters read the packed fields in place, so a scan runs at the speed
+ * of the disk or page cache rather than of parsing.
+ *
+ * A single mapping is limited to 2 GB, so the file is mapped in chunks of 2^25
+ * records (1 GB). A record never crosses a chunk boundary. Cursors over separate
+ * ranges can be used by separate threads at the same time.
+ */
+
+package com.george.dataset;
+
+import com.george.board.ChessBoard;
+import com.george.board.Move;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class PositionStore implements AutoCloseable {
+
+    // Records per mapped chunk
+    private static final int CHUNK_SHIFT = 25;
+    private static final long CHUNK_RECORDS = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_BYTES = CHUNK_RECORDS * TrainingRecord.BYTES;
+
+    private final FileChannel channel;
+    private final ByteBuffer[] chunks;
+    private final long size;
+
+    /**
+     * Opens and maps a training data file for reading.
+     *
+     * @param file The file.
+     * @throws IOException If the file cannot be opened or mapped, or is not a training
+     * data file of the current version.
+     */
+    public PositionStore(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(TrainingDataWriter.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            if (header.position() < TrainingDataWriter.HEADER_BYTES || header.getInt(0) != TrainingDataWriter.MAGIC) {
+                throw new IOException("Not a training data file: " + file);
+            }
+            if (header.getInt(4) != TrainingDataWriter.VERSION || header.getInt(8) != TrainingRecord.BYTES) {
+                throw new IOException("Training data file " + file + " has version " + header.getInt(4)
+                        + ", expected " + TrainingDataWriter.VERSION);
+            }
+
+            // A partly written last record is left out
+            size = (channel.size() - TrainingDataWriter.HEADER_BYTES) / TrainingRecord.BYTES;
+            chunks = new ByteBuffer[(int) ((size + CHUNK_RECORDS - 1) >> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = TrainingDataWriter.HEADER_BYTES + i * CHUNK_BYTES;
+                long length = Math.min(CHUNK_RECORDS, size - ((long) i << CHUNK_SHIFT)) * TrainingRecord.BYTES;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of positions in the file.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return A cursor over every position, placed before the first.
+     */
+    public Cursor cursor() {
+        return new Cursor(0, size);
+    }
+
+    /**
+     * Creates a cursor over part of the file, for example one slice per thread.
+     *
+     * @param from The index of the first position.
+     * @param to The index after the last position.
+     * @return A cursor placed before the first position of the range.
+     */
+    public Cursor cursor(long from, long to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + "-" + to + " of " + size);
+        }
+        return new Cursor(from, to);
+    }
+
+    /**
+     * Closes the file. The mappings are released once no cursor uses them.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Points at one record of the mapped file at a time. A cursor is a view, not a
+     * copy: its getters read the record in place and it holds no per-position state,
+     * so it can walk any number of positions without creating objects.
+     *
+     * A cursor is not thread-safe; give each thread its own.
+     */
+    public final class Cursor {
+        private final long end;
+        private long index;
+        private ByteBuffer chunk;
+        private int offset;
+        private StringBuilder fen;
+
+        private Cursor(long from, long to) {
+            this.index = from - 1;
+            this.end = to;
+        }
+
+        /**
+         * Moves to the next position.
+         *
+         * @return false if there are no more positions in the cursor's range.
+         */
+        public boolean next() {
+            if (index + 1 >= end) {
+                index = end;
+                return false;
+            }
+            seek(index + 1);
+            return true;
+        }
+
+        /**
+         * Moves to a position by its index in the file.
+         *
+         * @param position The index of the position.
+         */
+        public void seek(long position) {
+            if (position < 0 || position >= size) {
+                throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+            }
+            index = position;
+            chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+            offset = (int) (position & (CHUNK_RECORDS - 1)) * TrainingRecord.BYTES;
+        }
+
+        /**
+         * @return The index of the current position in the file.
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * @return The occupied squares, as a bitboard.
+         */
+        public long getOccupied() {
+            return TrainingRecord.occupied(chunk, offset);
+        }
+
+        /**
+         * @return The piece on a square, or 0 if it is empty.
+         */
+        public int getPiece(int square) {
+            return TrainingRecord.piece(chunk, offset, square);
+        }
+
+        /**
+         * @return true if Black is to move.
+         */
+        public boolean isBlackToMove() {
+            return TrainingRecord.isBlackToMove(chunk, offset);
+        }
+
+        /**
+         * @return The castling rights (see ChessBoard.WHITE_KINGSIDE etc.).
+         */
+        public int getCastlingRights() {
+            return TrainingRecord.castlingRights(chunk, offset);
+        }
+
+        /**
+         * @return The en passant square, or -1.
+         */
+        public int getEnPassantSquare() {
+            return TrainingRecord.enPassantSquare(chunk, offset);
+        }
+
+        /**
+         * @return The score from the side to move's point of view.
+         */
+        public int getScore() {
+            return TrainingRecord.score(chunk, offset);
+        }
+
+        /**
+         * @return The result of the game, such as TrainingRecord.WHITE_WINS.
+         */
+        public int getResult() {
+            return TrainingRecord.result(chunk, offset);
+        }
+
+        /**
+         * @return The engine's best move (see Move).
+         */
+        public int getBestMove() {
+            return TrainingRecord.bestMove(chunk, offset);
+        }
+
+        /**
+         * @return The Zobrist key of the position (see ChessBoard.getZobristKey()).
+         */
+        public long getZobristKey() {
+            return TrainingRecord.zobristKey(chunk, offset);
+        }
+
+        /**
+         * Fills an array in the layout of ChessBoard.getBoardArray(): the pieces in
+         * elements 0-63 and the score in element 64.
+         *
+         * @param features An array of at least 65 ints, reused between positions.
+         */
+        public void readFeatures(int[] features) {
+            TrainingRecord.readFeatures(chunk, offset, features);
+        }
+
+        /**
+         * @return The position as FEN, with the move counters set to "0 1".
+         */
+        public String toFen() {
+            return TrainingRecord.appendFen(chunk, offset, new StringBuilder(90)).toString();
+        }
+
+        /**
+         * Sets up a board in the current position, for replaying it.
+         *
+         * @param board The board to set up.
+         */
+        public void copyTo(ChessBoard board) {
+            if (fen == null) {
+                fen = new StringBuilder(90);
+            }
+            fen.setLength(0);
+            board.setFen(TrainingRecord.appendFen(chunk, offset, fen).toString());
+        }
+    }
+
+    /**
+     * Prints a summary of a training data file: the number of positions, the results
+     * of their games, the average score and how fast the file was scanned.
+     *
+     * @param args <file> [positions to print]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: PositionStore <file> [positions to print]");
+            return;
+        }
+        int show = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        try (PositionStore store = new PositionStore(Path.of(args[0]))) {
+            long start = System.nanoTime();
+            long[] results = new long[4];
+            long scoreSum = 0;
+            Cursor cursor = store.cursor();
+            while (cursor.next()) {
+                results[cursor.getResult()]++;
+                scoreSum += cursor.getScore();
+                if (cursor.getIndex() < show) {
+                    System.out.println(cursor.toFen() + "  score " + cursor.getScore() + "  best " + Move.toUci(cursor.getBestMove()));
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long positions = store.size();
+            System.out.println(positions + " positions");
+            System.out.printf("  results: %d white wins, %d black wins, %d draws, %d unknown%n",
+                    results[TrainingRecord.WHITE_WINS], results[TrainingRecord.BLACK_WINS],
+                    results[TrainingRecord.DRAW], results[TrainingRecord.RESULT_UNKNOWN]);
+            System.out.printf("  average score: %.1f%n", positions > 0 ? (double) scoreSum / positions : 0.0);
+            System.out.printf("  scanned in %.3f s (%.1f million positions/s)%n", seconds,
+                    seconds > 0 ? positions / seconds / 1e6 : 0.0);
+        }
+    }
+}
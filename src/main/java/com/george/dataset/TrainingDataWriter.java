@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: TrainingDataWriter
+ *
+ * This class appends TrainingRecords to a file through a FileChannel. Records collect
+ * in a direct buffer and are written in large blocks; sync() forces everything
+ * written so far to disk, which callers do periodically rather than per record.
+ *
+ * File layout: a 16-byte header (magic, version, record size), then the records.
+ * PositionStore reads the files back.
+ *
+ * A file can be reopened to continue an interrupted job. It is cut back to a given
+ * number of records (normally the count saved with the last sync), which also drops a
+ * partly written record left by a crash.
+ */
+
+package com.george.dataset;
+
+import com.george.board.ChessBoard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class TrainingDataWriter implements Closeable {
+
+    // Header fields
+    public static final int MAGIC = 0x4446544B;  // "KTFD"
+    public static final int VERSION = 2;
+    public static final int HEADER_BYTES = 16;
+
+    // Size of the write buffer
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long records;
+
+    /**
+     * Opens a training data file for appending, creating it if needed.
+     *
+     * @param file The file.
+     * @param keepRecords How many records of an existing file to keep; anything after
+     * them is cut off. Use 0 to start over.
+     * @throws IOException If the file cannot be opened, is not a training data file,
+     * or holds fewer records than keepRecords.
+     */
+    public TrainingDataWriter(Path file, long keepRecords) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (channel.size() < HEADER_BYTES || keepRecords == 0) {
+                channel.truncate(0);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(TrainingRecord.BYTES).putInt(0);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, HEADER_BYTES - buffer.remaining());
+                }
+                buffer.clear();
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(header, 0);
+                if (header.getInt(0) != MAGIC) {
+                    throw new IOException("Not a training data file: " + file);
+                }
+                if (header.getInt(4) != VERSION || header.getInt(8) != TrainingRecord.BYTES) {
+                    throw new IOException("Training data file " + file + " has version " + header.getInt(4)
+                            + ", expected " + VERSION);
+                }
+                long available = (channel.size() - HEADER_BYTES) / TrainingRecord.BYTES;
+                if (available < keepRecords) {
+                    throw new IOException("Training data file " + file + " holds " + available
+                            + " records, expected at least " + keepRecords);
+                }
+            }
+            records = keepRecords;
+            channel.truncate(HEADER_BYTES + records * TrainingRecord.BYTES);
+            channel.position(channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the record for one position.
+     *
+     * @param board The position.
+     * @param score The score from the side to move's point of view.
+     * @param bestMove The best move in the position.
+     * @param result The result of the game, such as TrainingRecord.WHITE_WINS.
+     * @throws IOException If the buffer had to be written out and that failed.
+     */
+    public void write(ChessBoard board, int score, int bestMove, int result) throws IOException {
+        if (buffer.remaining() < TrainingRecord.BYTES) {
+            flush();
+        }
+        TrainingRecord.write(board, score, bestMove, result, buffer);
+        records++;
+    }
+
+    /**
+     * Writes the buffered records to the channel, without forcing them to disk.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered records and forces the file to disk, so that getRecordCount()
+     * records survive a crash.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public void sync() throws IOException {
+        flush();
+        channel.force(false);
+    }
+
+    /**
+     * @return The number of records in the file, including buffered ones.
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Syncs the file and closes it.
+     *
+     * @throws IOException If the file cannot be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: TrainingRecord
+ *
+ * This class defines the packed 32-byte record stored for each position in a training
+ * data file, and reads records back without unpacking them into objects. Compared to
+ * the 65-int layout of ChessBoard.getBoardArray() (260 bytes) a record is 8 times
+ * smaller, so billions of positions fit on one disk and can be scanned straight from
+ * a memory-mapped file (see PositionStore).
+ *
+ * Record layout (32 bytes, little-endian):
+ * - Bytes 0-7:   the occupied squares as a bitboard (bit n = square n, a8 = 0).
+ * - Bytes 8-23:  one nibble per occupied square, in square order, holding the piece's
+ *                bitboard index (0-5 white pawn to king, 6-11 black); the first
+ *                piece is in the low nibble of byte 8. A position has at most 32 pieces.
+ * - Byte 24:     bit 0 set if Black is to move, bits 1-4 the castling rights, bits 5-6
+ *                the result of the game (RESULT_UNKNOWN, WHITE_WINS, BLACK_WINS, DRAW).
+ * - Byte 25:     the en passant square + 1, or 0 if there is none.
+ * - Bytes 26-27: the score in centipawns from the side to move's point of view
+ *                (mate scores as in SearchResult).
+ * - Bytes 28-31: the engine's best move (see Move).
+ *
+ * Records are written straight from a ChessBoard into a ByteBuffer, so producing one
+ * creates no objects.
+ */
+
+package com.george.dataset;
+
+import com.george.board.ChessBoard;
+import com.george.board.Zobrist;
+import com.george.pgn.PgnGame;
+
+import java.nio.ByteBuffer;
+
+public final class TrainingRecord {
+
+    // Size of one record in bytes
+    public static final int BYTES = 32;
+
+    // Results of the game a position was taken from
+    public static final int RESULT_UNKNOWN = 0;
+    public static final int WHITE_WINS = 1;
+    public static final int BLACK_WINS = 2;
+    public static final int DRAW = 3;
+
+    // Offsets of the fields
+    private static final int PIECES = 8;
+    private static final int FLAGS = 24;
+    private static final int EN_PASSANT = 25;
+    private static final int SCORE = 26;
+    private static final int BEST_MOVE = 28;
+
+    // Piece values indexed by piece code (the inverse of the bitboard index)
+    private static final int[] PIECE_BY_CODE = {1, 2, 3, 4, 5, 6, -1, -2, -3, -4, -5, -6};
+
+    private static final char[] FEN_LETTERS = "PRNBQKprnbqk".toCharArray();
+
+    private TrainingRecord() {
+        // Static helpers only
+    }
+
+    /**
+     * @param pgnResult A PGN result, such as PgnGame.WHITE_WINS.
+     * @return The matching result code for a record.
+     */
+    public static int result(String pgnResult) {
+        return switch (pgnResult) {
+            case PgnGame.WHITE_WINS -> WHITE_WINS;
+            case PgnGame.BLACK_WINS -> BLACK_WINS;
+            case PgnGame.DRAW -> DRAW;
+            default -> RESULT_UNKNOWN;
+        };
+    }
+
+    /**
+     * Appends the record for a position to a buffer, at its current position.
+     *
+     * @param board The position.
+     * @param score The score from the side to move's point of view.
+     * @param bestMove The best move in the position (see Move).
+     * @param result The result of the game, such as WHITE_WINS.
+     * @param out A little-endian buffer with at least BYTES bytes remaining.
+     * @throws IllegalArgumentException If the position has more than 32 pieces.
+     */
+    public static void write(ChessBoard board, int score, int bestMove, int result, ByteBuffer out) {
+        long occupied = board.getOccupied();
+        if (Long.bitCount(occupied) > 32) {
+            throw new IllegalArgumentException("Too many pieces to pack: " + board.toFen());
+        }
+        out.putLong(occupied);
+
+        // Two piece codes per byte, in square order
+        int start = out.position();
+        int index = 0;
+        int pair = 0;
+        for (long bits = occupied; bits != 0; bits &= bits - 1) {
+            int piece = board.getPiece(Long.numberOfTrailingZeros(bits));
+            int code = piece > 0 ? piece - 1 : 5 - piece;
+            if ((index & 1) == 0) {
+                pair = code;
+            } else {
+                out.put((byte) (pair | code << 4));
+            }
+            index++;
+        }
+        if ((index & 1) != 0) {
+            out.put((byte) pair);
+        }
+        while (out.position() < start + 16) {
+            out.put((byte) 0);
+        }
+
+        int black = board.currentPlayer() == ChessBoard.Player.BLACK ? 1 : 0;
+        out.put((byte) (black | board.getCastlingRights() << 1 | result << 5));
+        out.put((byte) (board.getEnPassantSquare() + 1));
+        out.putShort((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score)));
+        out.putInt(bestMove);
+    }
+
+    /**
+     * @return The occupied squares of the record at the offset, as a bitboard.
+     */
+    public static long occupied(ByteBuffer in, int offset) {
+        return in.getLong(offset);
+    }
+
+    /**
+     * @return The piece on a square of the record at the offset, or 0 if it is empty.
+     */
+    public static int piece(ByteBuffer in, int offset, int square) {
+        long occupied = in.getLong(offset);
+        if ((occupied & 1L << square) == 0) {
+            return 0;
+        }
+        int index = Long.bitCount(occupied & ((1L << square) - 1));
+        return PIECE_BY_CODE[(in.get(offset + PIECES + (index >> 1)) >> ((index & 1) << 2)) & 0x0F];
+    }
+
+    /**
+     * Reads the squares and score of a record into the layout of getBoardArray().
+     *
+     * @param in A little-endian buffer holding records.
+     * @param offset The byte offset of the record.
+     * @param features An array of at least 65 ints, filled with the piece on each
+     * square (0-63) and the score (64).
+     */
+    public static void readFeatures(ByteBuffer in, int offset, int[] features) {
+        long occupied = in.getLong(offset);
+        int index = 0;
+        for (int square = 0; square < 64; square++) {
+            if ((occupied & 1L << square) == 0) {
+                features[square] = 0;
+            } else {
+                int code = (in.get(offset + PIECES + (index >> 1)) >> ((index & 1) << 2)) & 0x0F;
+                features[square] = PIECE_BY_CODE[code];
+                index++;
+            }
+        }
+        features[64] = score(in, offset);
+    }
+
+    /**
+     * @return true if Black is to move in the record at the offset.
+     */
+    public static boolean isBlackToMove(ByteBuffer in, int offset) {
+        return (in.get(offset + FLAGS) & 1) != 0;
+    }
+
+    /**
+     * @return The castling rights of the record at the offset.
+     */
+    public static int castlingRights(ByteBuffer in, int offset) {
+        return (in.get(offset + FLAGS) >> 1) & 0x0F;
+    }
+
+    /**
+     * @return The result of the game the record at the offset was taken from.
+     */
+    public static int result(ByteBuffer in, int offset) {
+        return (in.get(offset + FLAGS) >> 5) & 0x03;
+    }
+
+    /**
+     * @return The en passant square of the record at the offset, or -1.
+     */
+    public static int enPassantSquare(ByteBuffer in, int offset) {
+        return (in.get(offset + EN_PASSANT) & 0xFF) - 1;
+    }
+
+    /**
+     * @return The score of the record at the offset.
+     */
+    public static int score(ByteBuffer in, int offset) {
+        return in.getShort(offset + SCORE);
+    }
+
+    /**
+     * @return The best move of the record at the offset.
+     */
+    public static int bestMove(ByteBuffer in, int offset) {
+        return in.getInt(offset + BEST_MOVE);
+    }
+
+    /**
+     * Computes the Zobrist key of the record's position, the same key a ChessBoard set
+     * up in that position would have.
+     *
+     * @return The Zobrist key of the record at the offset.
+     */
+    public static long zobristKey(ByteBuffer in, int offset) {
+        long key = 0;
+        int index = 0;
+        for (long bits = in.getLong(offset); bits != 0; bits &= bits - 1) {
+            int code = (in.get(offset + PIECES + (index >> 1)) >> ((index & 1) << 2)) & 0x0F;
+            key ^= Zobrist.piece(PIECE_BY_CODE[code], Long.numberOfTrailingZeros(bits));
+            index++;
+        }
+        key ^= Zobrist.castling(castlingRights(in, offset));
+        int enPassant = enPassantSquare(in, offset);
+        if (enPassant >= 0) {
+            key ^= Zobrist.enPassant(enPassant);
+        }
+        if (isBlackToMove(in, offset)) {
+            key ^= Zobrist.side();
+        }
+        return key;
+    }
+
+    /**
+     * Appends the position of a record as FEN, for loading it back into a ChessBoard.
+     * The move counters are not stored and are written as "0 1".
+     *
+     * @param in A little-endian buffer holding records.
+     * @param offset The byte offset of the record.
+     * @param out Where the FEN is appended.
+     * @return out, for chaining.
+     */
+    public static StringBuilder appendFen(ByteBuffer in, int offset, StringBuilder out) {
+        long occupied = in.getLong(offset);
+        int index = 0;
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int square = row * 8 + col;
+                if ((occupied & 1L << square) == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    out.append(empty);
+                    empty = 0;
+                }
+                int code = (in.get(offset + PIECES + (index >> 1)) >> ((index & 1) << 2)) & 0x0F;
+                out.append(FEN_LETTERS[code]);
+                index++;
+            }
+            if (empty > 0) {
+                out.append(empty);
+            }
+            if (row < 7) {
+                out.append('/');
+            }
+        }
+
+        out.append(isBlackToMove(in, offset) ? " b " : " w ");
+        int castling = castlingRights(in, offset);
+        if (castling == 0) {
+            out.append('-');
+        } else {
+            for (int i = 0; i < 4; i++) {
+                if ((castling & 1 << i) != 0) {
+                    out.append("KQkq".charAt(i));
+                }
+            }
+        }
+        int enPassant = enPassantSquare(in, offset);
+        out.append(' ');
+        if (enPassant < 0) {
+            out.append('-');
+        } else {
+            out.append((char) ('a' + (enPassant & 7))).append((char) ('8' - (enPassant >> 3)));
+        }
+        return out.append(" 0 1");
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: Evaluator
+ *
+ * This class gives a static score to a chess position: material plus a bonus or
+ * penalty for where each piece stands (piece-square tables). The king uses separate
+ * middlegame and endgame tables, blended by how much material is left on the board.
+ *
+ * Scores are in centipawns from the point of view of the side to move, which is what
+ * a negamax search expects.
+ */
+
+package com.george.engine;
+
+import com.george.board.ChessBoard;
+
+public final class Evaluator {
+
+    // Material values indexed by piece type (pawn, rook, knight, bishop, queen, king)
+    static final int[] PIECE_VALUES = {0, 100, 500, 320, 330, 900, 0};
+
+    // Piece-square tables from White's point of view, listed from a8 to h1 to match
+    // the square numbering of ChessBoard. Black squares are mirrored with (sq ^ 56).
+    private static final int[] PAWN_TABLE = {
+         0,   0,   0,   0,   0,   0,   0,   0,
+        50,  50,  50,  50,  50,  50,  50,  50,
+        10,  10,  20,  30,  30,  20,  10,  10,
+         5,   5,  10,  25,  25,  10,   5,   5,
+         0,   0,   0,  20,  20,   0,   0,   0,
+         5,  -5, -10,   0,   0, -10,  -5,   5,
+         5,  10,  10, -20, -20,  10,  10,   5,
+         0,   0,   0,   0,   0,   0,   0,   0
+    };
+
+    private static final int[] KNIGHT_TABLE = {
+        -50, -40, -30, -30, -30, -30, -40, -50,
+        -40, -20,   0,   0,   0,   0, -20, -40,
+        -30,   0,  10,  15,  15,  10,   0, -30,
+        -30,   5,  15,  20,  20,  15,   5, -30,
+        -30,   0,  15,  20,  20,  15,   0, -30,
+        -30,   5,  10,  15,  15,  10,   5, -30,
+        -40, -20,   0,   5,   5,   0, -20, -40,
+        -50, -40, -30, -30, -30, -30, -40, -50
+    };
+
+    private static final int[] BISHOP_TABLE = {
+        -20, -10, -10, -10, -10, -10, -10, -20,
+        -10,   0,   0,   0,   0,   0,   0, -10,
+        -10,   0,   5,  10,  10,   5,   0, -10,
+        -10,   5,   5,  10,  10,   5,   5, -10,
+        -10,   0,  10,  10,  10,  10,   0, -10,
+        -10,  10,  10,  10,  10,  10,  10, -10,
+        -10,   5,   0,   0,   0,   0,   5, -10,
+        -20, -10, -10, -10, -10, -10, -10, -20
+    };
+
+    private static final int[] ROOK_TABLE = {
+         0,   0,   0,   0,   0,   0,   0,   0,
+         5,  10,  10,  10,  10,  10,  10,   5,
+        -5,   0,   0,   0,   0,   0,   0,  -5,
+        -5,   0,   0,   0,   0,   0,   0,  -5,
+        -5,   0,   0,   0,   0,   0,   0,  -5,
+        -5,   0,   0,   0,   0,   0,   0,  -5,
+        -5,   0,   0,   0,   0,   0,   0,  -5,
+         0,   0,   0,   5,   5,   0,   0,   0
+    };
+
+    private static final int[] QUEEN_TABLE = {
+        -20, -10, -10,  -5,  -5, -10, -10, -20,
+        -10,   0,   0,   0,   0,   0,   0, -10,
+        -10,   0,   5,   5,   5,   5,   0, -10,
+         -5,   0,   5,   5,   5,   5,   0,  -5,
+          0,   0,   5,   5,   5,   5,   0,  -5,
+        -10,   5,   5,   5,   5,   5,   0, -10,
+        -10,   0,   5,   0,   0,   0,   0, -10,
+        -20, -10, -10,  -5,  -5, -10, -10, -20
+    };
+
+    private static final int[] KING_MIDDLEGAME_TABLE = {
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -20, -30, -30, -40, -40, -30, -30, -20,
+        -10, -20, -20, -20, -20, -20, -20, -10,
+         20,  20,   0,   0,   0,   0,  20,  20,
+         20,  30,  10,   0,   0,  10,  30,  20
+    };
+
+    private static final int[] KING_ENDGAME_TABLE = {
+        -50, -40, -30, -20, -20, -30, -40, -50,
+        -30, -20, -10,   0,   0, -10, -20, -30,
+        -30, -10,  20,  30,  30,  20, -10, -30,
+        -30, -10,  30,  40,  40,  30, -10, -30,
+        -30, -10,  30,  40,  40,  30, -10, -30,
+        -30, -10,  20,  30,  30,  20, -10, -30,
+        -30, -30,   0,   0,   0,   0, -30, -30,
+        -50, -30, -30, -30, -30, -30, -30, -50
+    };
+
+    // Tables indexed by piece type, with the king handled separately
+    private static final int[][] TABLES = {null, PAWN_TABLE, ROOK_TABLE, KNIGHT_TABLE, BISHOP_TABLE, QUEEN_TABLE};
+
+    // Game phase weight per piece type; 24 means all pieces are still on the board
+    private static final int[] PHASE_WEIGHTS = {0, 0, 2, 1, 1, 4, 0};
+    private static final int MAX_PHASE = 24;
+
+    private Evaluator() {
+        // Static helpers only
+    }
+
+    /**
+     * Scores a position from the point of view of the side to move.
+     *
+     * @param board The position to score.
+     * @return The score in centipawns; positive is good for the side to move.
+     */
+    public static int evaluate(ChessBoard board) {
+        int score = 0;
+        int phase = 0;
+
+        for (int type = ChessBoard.PAWN; type <= ChessBoard.QUEEN; type++) {
+            int[] table = TABLES[type];
+
+            long white = board.getBitboard(type);
+            phase += PHASE_WEIGHTS[type] * Long.bitCount(white);
+            while (white != 0) {
+                int sq = Long.numberOfTrailingZeros(white);
+                white &= white - 1;
+                score += PIECE_VALUES[type] + table[sq];
+            }
+
+            long black = board.getBitboard(-type);
+            phase += PHASE_WEIGHTS[type] * Long.bitCount(black);
+            while (black != 0) {
+                int sq = Long.numberOfTrailingZeros(black);
+                black &= black - 1;
+                score -= PIECE_VALUES[type] + table[sq ^ 56];
+            }
+        }
+
+        // Blend the king tables: middlegame weight is phase, endgame weight is the rest
+        phase = Math.min(phase, MAX_PHASE);
+        int whiteKing = Long.numberOfTrailingZeros(board.getBitboard(ChessBoard.KING));
+        int blackKing = Long.numberOfTrailingZeros(board.getBitboard(-ChessBoard.KING)) ^ 56;
+        int kingMiddlegame = KING_MIDDLEGAME_TABLE[whiteKing] - KING_MIDDLEGAME_TABLE[blackKing];
+        int kingEndgame = KING_ENDGAME_TABLE[whiteKing] - KING_ENDGAME_TABLE[blackKing];
+        score += (kingMiddlegame * phase + kingEndgame * (MAX_PHASE - phase)) / MAX_PHASE;
+
+        return board.currentPlayer() == ChessBoard.Player.WHITE ? score : -score;
+    }
+}
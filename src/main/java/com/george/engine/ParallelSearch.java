@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: ParallelSearch
+ *
+ * This class runs the engine on several threads at once using "Lazy SMP": every thread
+ * runs its own Search on its own copy of the position, and all of them share one
+ * transposition table. The threads do not coordinate; they speed each other up by
+ * filling the table with results the others can reuse. The main thread's result is
+ * returned, with the nodes of all threads added together.
+ *
+ * Running main() measures how the nodes per second scale from 1 to N threads, which
+ * can be used to size machines.
+ *
+ * Usage: java com.george.engine.ParallelSearch [threads] [movetime ms] [hash MB] [runs]
+ */
+
+package com.george.engine;
+
+import com.george.board.ChessBoard;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ParallelSearch implements AutoCloseable {
+
+    // Positions used by the scaling benchmark
+    private static final String[] BENCHMARK_POSITIONS = {
+        ChessBoard.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"
+    };
+
+    private final TranspositionTable table;
+    private final Search[] searches;
+    private final ExecutorService helpers;
+    private final Future<?>[] running;
+
+    /**
+     * Creates a parallel search using one thread per available processor.
+     *
+     * @param hashMb The size of the shared transposition table in megabytes.
+     */
+    public ParallelSearch(int hashMb) {
+        this(Runtime.getRuntime().availableProcessors(), hashMb);
+    }
+
+    /**
+     * Creates a parallel search with a fixed number of threads. The calling thread is
+     * the main search thread, so threads - 1 helper threads are started.
+     *
+     * @param threads The number of search threads (at least 1).
+     * @param hashMb The size of the shared transposition table in megabytes.
+     * @throws IllegalArgumentException If threads is less than 1.
+     */
+    public ParallelSearch(int threads, int hashMb) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one search thread is needed: " + threads);
+        }
+        table = new TranspositionTable(hashMb);
+        searches = new Search[threads];
+        for (int i = 0; i < threads; i++) {
+            searches[i] = new Search(table);
+        }
+        running = new Future<?>[threads];
+        helpers = threads > 1 ? Executors.newFixedThreadPool(threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);  // Never keep the application alive
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Searches for the best move on all threads within a time limit.
+     *
+     * @param position The position to search; each thread works on its own copy.
+     * @param moveTimeMillis How long to search, in milliseconds.
+     * @return The main thread's best move, with the nodes of every thread counted.
+     */
+    public SearchResult search(ChessBoard position, long moveTimeMillis) {
+        return search(position, moveTimeMillis, Search.MAX_PLY - 1);
+    }
+
+    /**
+     * Searches for the best move on all threads within a time and depth limit.
+     *
+     * @param position The position to search; each thread works on its own copy.
+     * @param moveTimeMillis How long to search, in milliseconds.
+     * @param maxDepth The deepest iteration to run.
+     * @return The main thread's best move, with the nodes of every thread counted.
+     */
+    public synchronized SearchResult search(ChessBoard position, long moveTimeMillis, int maxDepth) {
+        table.newSearch();
+        for (Search search : searches) {
+            search.resetStop();
+        }
+
+        for (int i = 1; i < searches.length; i++) {
+            Search helper = searches[i];
+            running[i] = helpers.submit(() -> helper.run(position, moveTimeMillis, maxDepth));
+        }
+
+        SearchResult main = searches[0].run(position, moveTimeMillis, maxDepth);
+
+        // The main thread decides; stop the helpers and wait for them to let go of the board
+        long nodes = main.getNodes();
+        for (int i = 1; i < searches.length; i++) {
+            searches[i].stop();
+        }
+        for (int i = 1; i < searches.length; i++) {
+            try {
+                running[i].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search helper failed", e.getCause());
+            }
+            nodes += searches[i].getNodes();
+        }
+
+        return new SearchResult(main.getBestMove(), main.getScore(), main.getDepth(), nodes,
+                main.getTimeMillis(), main.getPrincipalVariation());
+    }
+
+    /**
+     * Stops a running search on every thread.
+     */
+    public void stop() {
+        for (Search search : searches) {
+            search.stop();
+        }
+    }
+
+    /**
+     * @return The number of search threads, including the main thread.
+     */
+    public int getThreads() {
+        return searches.length;
+    }
+
+    /**
+     * @return The transposition table shared by all threads.
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Stops the helper threads.
+     */
+    @Override
+    public void close() {
+        stop();
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+    }
+
+    /**
+     * Measures nodes per second with 1, 2, 4, ... up to N threads and prints the
+     * speed-up over a single thread. Each thread count gets its own ParallelSearch,
+     * which is warmed up before it is measured; the table is cleared before every run
+     * so no run reuses the work of an earlier one, and the median of several runs is
+     * reported. Time is taken on the wall clock around each search, so helper threads
+     * that are slow to stop are paid for.
+     *
+     * @param args Optional thread count (default: all processors), time per position in
+     * milliseconds (default 2000), hash size in megabytes (default 256) and number of
+     * runs per thread count (default 3).
+     */
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long moveTime = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        int hashMb = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        System.out.println("Processors: " + Runtime.getRuntime().availableProcessors());
+        long singleThreadNps = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            try (ParallelSearch search = new ParallelSearch(threads, hashMb)) {
+                // Warm up the JIT on the same code path and threads that are measured
+                for (String fen : BENCHMARK_POSITIONS) {
+                    search.search(ChessBoard.fromFen(fen), moveTime / 4);
+                }
+
+                long[] npsPerRun = new long[runs];
+                long nodes = 0;
+                for (int run = 0; run < runs; run++) {
+                    long runNodes = 0;
+                    long runNanos = 0;
+                    for (String fen : BENCHMARK_POSITIONS) {
+                        ChessBoard position = ChessBoard.fromFen(fen);
+                        search.getTable().clear();
+                        long start = System.nanoTime();
+                        runNodes += search.search(position, moveTime).getNodes();
+                        runNanos += System.nanoTime() - start;
+                    }
+                    npsPerRun[run] = runNanos > 0 ? runNodes * 1_000_000_000L / runNanos : runNodes;
+                    nodes += runNodes;
+                }
+                Arrays.sort(npsPerRun);
+                long nps = npsPerRun[runs / 2];
+
+                if (threads == 1) {
+                    singleThreadNps = nps;
+                }
+                System.out.printf("Threads: %3d  Nodes: %12d  NPS: %12d (%d-%d)  Speed-up: %.2fx%n",
+                        threads, nodes / runs, nps, npsPerRun[0], npsPerRun[runs - 1],
+                        singleThreadNps > 0 ? (double) nps / singleThreadNps : 0.0);
+            }
+            if (threads >= maxThreads) {
+                break;
+            }
+        }
+    }
+}
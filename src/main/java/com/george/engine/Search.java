@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: Search
+ *
+ * This class is the "King Fischer" engine: a pure Java alpha-beta search that works
+ * directly on a ChessBoard, so a move can be chosen without starting an external
+ * engine process.
+ *
+ * Key techniques:
+ * - Iterative deepening under a "go movetime" style time limit; the result of the last
+ *   completed depth is returned when time runs out.
+ * - Principal variation search (PVS): the first move gets a full window, the rest a
+ *   null window that is widened only if they turn out better.
+ * - Null-move pruning: if passing the turn still fails high, the node is cut.
+ * - Late move reductions (LMR) for quiet moves ordered late.
+ * - Quiescence search over captures and promotions to avoid horizon blunders.
+ * - A transposition table keyed by the board's Zobrist key, for cut-offs and ordering.
+ * - Move ordering by hash move, previous principal variation, MVV-LVA, killer moves
+ *   and history.
+ *
+ * All buffers are allocated once per Search, so searching does not allocate. A Search
+ * is not thread-safe; use one per thread. The transposition table can be shared.
+ */
+
+package com.george.engine;
+
+import com.george.board.ChessBoard;
+import com.george.board.Move;
+import com.george.board.MoveGenerator;
+
+import java.util.Arrays;
+
+public class Search {
+
+    // Score bounds; mate scores are MATE minus the distance to mate in plies
+    public static final int INFINITY = 32000;
+    public static final int MATE = 31000;
+    public static final int MAX_PLY = 128;
+
+    // Null-move depth reduction
+    private static final int NULL_MOVE_REDUCTION = 2;
+
+    // Transposition table size used when none is given
+    public static final int DEFAULT_HASH_MB = 16;
+
+    // How many nodes to search between checks of the clock
+    private static final int TIME_CHECK_INTERVAL = 2048;
+
+    // Ordering scores for move classes
+    private static final int HASH_MOVE_SCORE = 3_000_000;
+    private static final int PV_SCORE = 2_000_000;
+    private static final int CAPTURE_SCORE = 1_000_000;
+    private static final int PROMOTION_SCORE = 900_000;
+    private static final int KILLER_SCORE = 800_000;
+
+    // Per-ply move lists and their ordering scores
+    private final int[][] moves = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+    private final int[][] moveScores = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+
+    // Two killer moves per ply and a from/to history table for quiet moves
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[64][64];
+
+    // Triangular principal variation table and the variation of the last iteration
+    private final int[][] pvTable = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    private final int[] previousPv = new int[MAX_PLY];
+    private int previousPvLength;
+
+    private final TranspositionTable table;
+
+    private ChessBoard board;
+    private long nodes;
+    private long deadline;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a search with its own transposition table of DEFAULT_HASH_MB megabytes.
+     */
+    public Search() {
+        this(new TranspositionTable(DEFAULT_HASH_MB));
+    }
+
+    /**
+     * Creates a search that uses the given transposition table, which may be shared
+     * with other searches running at the same time.
+     *
+     * @param table The transposition table.
+     */
+    public Search(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * @return The transposition table this search uses.
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Searches for the best move within a time limit, like the UCI "go movetime" command.
+     *
+     * @param position The position to search; it is copied and left untouched.
+     * @param moveTimeMillis How long to search, in milliseconds.
+     * @return The best move found and the statistics of the search.
+     */
+    public SearchResult search(ChessBoard position, long moveTimeMillis) {
+        return search(position, moveTimeMillis, MAX_PLY - 1);
+    }
+
+    /**
+     * Searches for the best move within a time and depth limit.
+     *
+     * @param position The position to search; it is copied and left untouched.
+     * @param moveTimeMillis How long to search, in milliseconds.
+     * @param maxDepth The deepest iteration to run.
+     * @return The best move found and the statistics of the search.
+     */
+    public SearchResult search(ChessBoard position, long moveTimeMillis, int maxDepth) {
+        stopped = false;
+        table.newSearch();
+        return run(position, moveTimeMillis, maxDepth);
+    }
+
+    /**
+     * Runs the iterative deepening loop. Unlike search, this neither clears a pending
+     * stop request nor starts a new table generation, so several threads can run it on
+     * one shared table as parts of the same search (see ParallelSearch).
+     */
+    SearchResult run(ChessBoard position, long moveTimeMillis, int maxDepth) {
+        long start = System.nanoTime();
+        board = new ChessBoard(position);
+        nodes = 0;
+        deadline = start + moveTimeMillis * 1_000_000L;
+        previousPvLength = 0;
+        for (int[] killer : killers) {
+            killer[0] = Move.NONE;
+            killer[1] = Move.NONE;
+        }
+        for (int[] row : history) {
+            Arrays.fill(row, 0);
+        }
+
+        // Fall back to the first legal move in case not even depth 1 completes
+        int count = board.generateLegalMoves(moves[0]);
+        int bestMove = count > 0 ? moves[0][0] : Move.NONE;
+        int bestScore = count > 0 ? 0 : (board.isInCheck() ? -MATE : 0);
+        int completedDepth = 0;
+        int[] bestPv = count > 0 ? new int[]{bestMove} : new int[0];
+
+        for (int depth = 1; depth <= maxDepth && count > 0; depth++) {
+            int score = pvs(depth, -INFINITY, INFINITY, 0, false);
+            if (stopped) {
+                break;
+            }
+
+            completedDepth = depth;
+            bestScore = score;
+            previousPvLength = pvLength[0];
+            System.arraycopy(pvTable[0], 0, previousPv, 0, previousPvLength);
+            if (previousPvLength > 0) {
+                bestMove = previousPv[0];
+                bestPv = Arrays.copyOf(previousPv, previousPvLength);
+            }
+
+            // A forced mate will not get any shorter with more depth
+            if (Math.abs(score) >= MATE - depth) {
+                break;
+            }
+        }
+
+        long elapsed = (System.nanoTime() - start) / 1_000_000L;
+        return new SearchResult(bestMove, bestScore, completedDepth, nodes, elapsed, bestPv);
+    }
+
+    /**
+     * Asks a running search to stop as soon as possible. The search still returns the
+     * best move of the last completed depth.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Clears a stop request before a search is handed to another thread.
+     */
+    void resetStop() {
+        stopped = false;
+    }
+
+    /**
+     * @return The number of positions visited by the current or last search.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Principal variation search with null-move pruning and late move reductions.
+     *
+     * @return The score of the position from the side to move's point of view.
+     */
+    private int pvs(int depth, int alpha, int beta, int ply, boolean allowNull) {
+        pvLength[ply] = ply;
+
+        if (ply > 0 && (board.getHalfmoveClock() >= 100 || board.isRepetition())) {
+            return 0;  // Fifty-move rule, or a repetition either side can force again
+        }
+
+        boolean inCheck = board.isInCheck();
+        if (inCheck) {
+            depth++;  // Check extension
+        }
+        if (depth <= 0) {
+            return quiescence(alpha, beta, ply);
+        }
+
+        if ((++nodes & (TIME_CHECK_INTERVAL - 1)) == 0 && System.nanoTime() > deadline) {
+            stopped = true;
+        }
+        if (stopped) {
+            return 0;
+        }
+        if (ply >= MAX_PLY - 1) {
+            return Evaluator.evaluate(board);
+        }
+
+        boolean pvNode = beta - alpha > 1;
+        long key = board.getZobristKey();
+
+        // Use an earlier result for this position if it was searched deeply enough
+        int hashMove = Move.NONE;
+        long entry = table.probe(key);
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            if (!pvNode && ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int score = scoreFromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        // Null-move pruning: give the opponent a free move and see if we still fail high
+        if (allowNull && !pvNode && !inCheck && depth >= 3 && hasNonPawnMaterial()
+                && Evaluator.evaluate(board) >= beta) {
+            board.makeNullMove();
+            int score = -pvs(depth - 1 - NULL_MOVE_REDUCTION, -beta, -beta + 1, ply + 1, false);
+            board.unmakeNullMove();
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return beta;
+            }
+        }
+
+        int[] list = moves[ply];
+        int count = board.generateLegalMoves(list);
+        if (count == 0) {
+            return inCheck ? -MATE + ply : 0;  // Checkmate or stalemate
+        }
+        scoreMoves(list, count, ply, hashMove);
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITY;
+        int bestMove = Move.NONE;
+        for (int i = 0; i < count; i++) {
+            int move = pickMove(list, moveScores[ply], i, count);
+            boolean quiet = isQuiet(move);
+
+            board.makeMove(move);
+            int score;
+            if (i == 0) {
+                score = -pvs(depth - 1, -beta, -alpha, ply + 1, true);
+            } else {
+                // Reduce late quiet moves that do not give check
+                int reduction = 0;
+                if (depth >= 3 && i >= 3 && quiet && !inCheck && !board.isInCheck()) {
+                    reduction = i >= 6 ? 2 : 1;
+                }
+                score = -pvs(depth - 1 - reduction, -alpha - 1, -alpha, ply + 1, true);
+                if (score > alpha && reduction > 0) {
+                    score = -pvs(depth - 1, -alpha - 1, -alpha, ply + 1, true);
+                }
+                if (score > alpha && score < beta) {
+                    score = -pvs(depth - 1, -beta, -alpha, ply + 1, true);
+                }
+            }
+            board.unmakeMove();
+
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if (score >= beta) {
+                        if (quiet) {
+                            storeKiller(ply, move);
+                            history[Move.from(move)][Move.to(move)] += depth * depth;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = bestScore >= beta ? TranspositionTable.LOWER
+                : bestScore > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        table.store(key, bestMove, scoreToTable(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    /**
+     * Searches captures and promotions only, until the position is quiet.
+     *
+     * @return The score of the position from the side to move's point of view.
+     */
+    private int quiescence(int alpha, int beta, int ply) {
+        pvLength[ply] = ply;
+
+        if ((++nodes & (TIME_CHECK_INTERVAL - 1)) == 0 && System.nanoTime() > deadline) {
+            stopped = true;
+        }
+        if (stopped) {
+            return 0;
+        }
+
+        boolean inCheck = board.isInCheck();
+        int standPat = Evaluator.evaluate(board);
+        if (ply >= MAX_PLY - 1) {
+            return standPat;
+        }
+
+        // When in check every evasion is searched and there is no standing pat
+        int bestScore = inCheck ? -INFINITY : standPat;
+        if (bestScore >= beta) {
+            return bestScore;
+        }
+        if (bestScore > alpha) {
+            alpha = bestScore;
+        }
+
+        int[] list = moves[ply];
+        int count = board.generateLegalMoves(list);
+        if (count == 0 && inCheck) {
+            return -MATE + ply;
+        }
+
+        // Keep only captures and promotions unless the king must escape a check
+        if (!inCheck) {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (!isQuiet(list[i])) {
+                    list[kept++] = list[i];
+                }
+            }
+            count = kept;
+        }
+        scoreMoves(list, count, ply, Move.NONE);
+
+        for (int i = 0; i < count; i++) {
+            int move = pickMove(list, moveScores[ply], i, count);
+            board.makeMove(move);
+            int score = -quiescence(-beta, -alpha, ply + 1);
+            board.unmakeMove();
+
+            if (stopped) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (score >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    /**
+     * Gives every move an ordering score: the hash move first, then the previous
+     * principal variation, captures by most valuable victim / least valuable attacker,
+     * promotions, killers, and finally quiet moves by history.
+     */
+    private void scoreMoves(int[] list, int count, int ply, int hashMove) {
+        int[] scores = moveScores[ply];
+        int pvMove = ply < previousPvLength ? previousPv[ply] : Move.NONE;
+
+        for (int i = 0; i < count; i++) {
+            int move = list[i];
+            int victim = Math.abs(board.getPiece(Move.to(move)));
+            if (move == hashMove) {
+                scores[i] = HASH_MOVE_SCORE;
+            } else if (move == pvMove) {
+                scores[i] = PV_SCORE;
+            } else if (victim != ChessBoard.EMPTY || Move.flag(move) == Move.EN_PASSANT) {
+                int attacker = Math.abs(board.getPiece(Move.from(move)));
+                scores[i] = CAPTURE_SCORE + Evaluator.PIECE_VALUES[victim == 0 ? ChessBoard.PAWN : victim] * 10
+                        - Evaluator.PIECE_VALUES[attacker] / 10;
+            } else if (Move.promotion(move) != 0) {
+                scores[i] = PROMOTION_SCORE + Evaluator.PIECE_VALUES[Move.promotion(move)];
+            } else if (move == killers[ply][0]) {
+                scores[i] = KILLER_SCORE;
+            } else if (move == killers[ply][1]) {
+                scores[i] = KILLER_SCORE - 1;
+            } else {
+                scores[i] = Math.min(history[Move.from(move)][Move.to(move)], KILLER_SCORE - 2);
+            }
+        }
+    }
+
+    /**
+     * Moves the best scored move of the remaining ones to position i and returns it
+     * (one step of a selection sort, so unsearched moves are never sorted).
+     */
+    private static int pickMove(int[] list, int[] scores, int i, int count) {
+        int best = i;
+        for (int j = i + 1; j < count; j++) {
+            if (scores[j] > scores[best]) {
+                best = j;
+            }
+        }
+        int move = list[best];
+        list[best] = list[i];
+        list[i] = move;
+        int score = scores[best];
+        scores[best] = scores[i];
+        scores[i] = score;
+        return move;
+    }
+
+    /**
+     * A move is quiet if it neither captures nor promotes.
+     */
+    private boolean isQuiet(int move) {
+        return board.getPiece(Move.to(move)) == ChessBoard.EMPTY
+                && Move.flag(move) != Move.EN_PASSANT
+                && Move.promotion(move) == 0;
+    }
+
+    /**
+     * Null-move pruning is unsafe in pawn endings, where zugzwang is common.
+     */
+    private boolean hasNonPawnMaterial() {
+        int sign = board.currentPlayer() == ChessBoard.Player.WHITE ? 1 : -1;
+        return (board.getBitboard(sign * ChessBoard.KNIGHT) | board.getBitboard(sign * ChessBoard.BISHOP)
+                | board.getBitboard(sign * ChessBoard.ROOK) | board.getBitboard(sign * ChessBoard.QUEEN)) != 0;
+    }
+
+    /**
+     * Mate scores are stored relative to the position rather than the root, so they
+     * stay correct when the position is reached at a different ply.
+     */
+    private static int scoreToTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score + ply;
+        }
+        if (score <= -MATE + MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int scoreFromTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score - ply;
+        }
+        if (score <= -MATE + MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    private void storeKiller(int ply, int move) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+    }
+
+    private void updatePv(int ply, int move) {
+        pvTable[ply][ply] = move;
+        System.arraycopy(pvTable[ply + 1], ply + 1, pvTable[ply], ply + 1, pvLength[ply + 1] - (ply + 1));
+        pvLength[ply] = pvLength[ply + 1];
+    }
+}
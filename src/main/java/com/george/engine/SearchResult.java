@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: SearchResult
+ *
+ * This class holds the outcome of a search: the best move found, its score, how deep
+ * the search got and how much work it did. Moves are packed ints (see Move).
+ */
+
+package com.george.engine;
+
+import com.george.board.Move;
+
+public final class SearchResult {
+
+    private final int bestMove;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long timeMillis;
+    private final int[] principalVariation;
+
+    /**
+     * Creates a search result.
+     *
+     * @param bestMove The best move found, or Move.NONE if there are no legal moves.
+     * @param score The score in centipawns from the side to move's point of view.
+     * @param depth The last depth that was searched completely.
+     * @param nodes The number of positions visited.
+     * @param timeMillis The time the search took.
+     * @param principalVariation The expected line of play, starting with bestMove.
+     */
+    public SearchResult(int bestMove, int score, int depth, long nodes, long timeMillis, int[] principalVariation) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.timeMillis = timeMillis;
+        this.principalVariation = principalVariation;
+    }
+
+    /**
+     * @return The best move found, or Move.NONE if there are no legal moves.
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * @return The score in centipawns from the side to move's point of view.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return true if the score announces a forced mate for either side.
+     */
+    public boolean isMateScore() {
+        return Math.abs(score) >= Search.MATE - Search.MAX_PLY;
+    }
+
+    /**
+     * @return The last depth that was searched completely.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return The number of positions visited.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return The time the search took in milliseconds.
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * @return The number of positions visited per second.
+     */
+    public long getNodesPerSecond() {
+        return timeMillis > 0 ? nodes * 1000 / timeMillis : nodes;
+    }
+
+    /**
+     * @return A copy of the expected line of play, starting with the best move.
+     */
+    public int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    /**
+     * Returns a summary in the style of a UCI info line.
+     *
+     * @return The depth, score, node count, speed and principal variation.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("depth ").append(depth).append(" score ");
+        if (isMateScore()) {
+            int plies = Search.MATE - Math.abs(score);
+            sb.append("mate ").append(score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2);
+        } else {
+            sb.append("cp ").append(score);
+        }
+        sb.append(" nodes ").append(nodes).append(" nps ").append(getNodesPerSecond())
+                .append(" time ").append(timeMillis).append(" pv");
+        for (int move : principalVariation) {
+            Move.appendUci(move, sb.append(' '));
+        }
+        return sb.toString();
+    }
+}
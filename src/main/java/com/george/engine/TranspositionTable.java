@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: TranspositionTable
+ *
+ * This class remembers the results of earlier searches, keyed by the Zobrist key of
+ * the position (ChessBoard.getZobristKey()). It is a fixed-size table of 16-byte
+ * entries held in direct (off-heap) memory, so tens of millions of entries cost no
+ * Java objects and keep the heap flat.
+ *
+ * Entry layout (two 64-bit words):
+ * - Word 0: the position key XOR word 1.
+ * - Word 1: the packed data (see below).
+ *
+ * Packed data:
+ * - Bits 0-16:  the best move (see Move).
+ * - Bits 17-32: the score, as a signed 16-bit value.
+ * - Bits 33-40: the search depth.
+ * - Bits 41-42: the bound (LOWER, UPPER or EXACT).
+ * - Bits 43-50: the generation (which search stored the entry).
+ *
+ * Several search threads can share one table without locks. The two words are written
+ * and read separately, so a reader can see half of one write and half of another; the
+ * XOR makes such a torn entry fail the key check, and it is treated as a miss.
+ */
+
+package com.george.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class TranspositionTable {
+
+    // Bound types; a stored entry always has a non-zero bound, so its data is never 0
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+    public static final int EXACT = 3;
+
+    private static final int ENTRY_BYTES = 16;
+
+    // Each direct buffer holds at most 2^26 entries (1 GB), as buffers are limited to 2 GB
+    private static final int CHUNK_BITS = 26;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+    // Views a byte buffer as longs so words can be read and written atomically
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer[] chunks;
+    private final long entryMask;
+    private final long entries;
+
+    // Generation of the current search; entries from older searches are replaced first
+    private volatile int generation;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Creates a table that uses about the given amount of memory. The number of entries
+     * is rounded down to a power of two.
+     *
+     * @param sizeMb The memory to use in megabytes (at least 1).
+     * @throws IllegalArgumentException If the size is not positive.
+     */
+    public TranspositionTable(int sizeMb) {
+        if (sizeMb < 1) {
+            throw new IllegalArgumentException("Hash size must be at least 1 MB: " + sizeMb);
+        }
+        long requested = (long) sizeMb * 1024 * 1024 / ENTRY_BYTES;
+        entries = Long.highestOneBit(requested);
+        entryMask = entries - 1;
+
+        int chunkCount = (int) Math.max(1, entries >>> CHUNK_BITS);
+        long entriesPerChunk = Math.min(entries, 1L << CHUNK_BITS);
+        chunks = new ByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] = ByteBuffer.allocateDirect((int) (entriesPerChunk * ENTRY_BYTES)).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param key The Zobrist key of the position.
+     * @return The packed entry data, or 0 if the position is not in the table. Use the
+     * static accessors (move, score, depth, bound) to unpack it.
+     */
+    public long probe(long key) {
+        long index = key & entryMask;
+        ByteBuffer chunk = chunks[(int) (index >>> CHUNK_BITS)];
+        int offset = (int) ((index & CHUNK_MASK) * ENTRY_BYTES);
+
+        long data = (long) LONGS.getOpaque(chunk, offset + 8);
+        long check = (long) LONGS.getOpaque(chunk, offset);
+        probes.increment();
+
+        if (data == 0) {
+            return 0;
+        }
+        if ((check ^ data) != key) {
+            collisions.increment();  // Another position, or a torn write
+            return 0;
+        }
+        hits.increment();
+        return data;
+    }
+
+    /**
+     * Stores the result of a search. An existing entry for a different position is
+     * replaced if it is from an older search or was searched less deeply; an entry for
+     * the same position is replaced unless it is deeper and the new result is not exact.
+     *
+     * @param key The Zobrist key of the position.
+     * @param move The best move found, or Move.NONE.
+     * @param score The score, which must fit in 16 signed bits.
+     * @param depth The depth searched (0-255).
+     * @param bound LOWER, UPPER or EXACT.
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        long index = key & entryMask;
+        ByteBuffer chunk = chunks[(int) (index >>> CHUNK_BITS)];
+        int offset = (int) ((index & CHUNK_MASK) * ENTRY_BYTES);
+
+        long oldData = (long) LONGS.getOpaque(chunk, offset + 8);
+        if (oldData != 0) {
+            long oldKey = (long) LONGS.getOpaque(chunk, offset) ^ oldData;
+            boolean sameGeneration = generation(oldData) == (generation & 0xFF);
+            if (oldKey == key) {
+                if (bound != EXACT && depth < depth(oldData)) {
+                    return;
+                }
+                // Keep the old best move when the new search did not find one
+                if (move == 0) {
+                    move = move(oldData);
+                }
+            } else if (sameGeneration && depth < depth(oldData)) {
+                return;
+            }
+        }
+
+        long data = (move & 0x1FFFFL)
+                | ((score & 0xFFFFL) << 17)
+                | ((long) (depth & 0xFF) << 33)
+                | ((long) bound << 41)
+                | ((long) (generation & 0xFF) << 43);
+        LONGS.setOpaque(chunk, offset, key ^ data);
+        LONGS.setOpaque(chunk, offset + 8, data);
+        stores.increment();
+    }
+
+    /**
+     * Marks the start of a new search, so entries from earlier searches are replaced
+     * before entries from this one.
+     */
+    public void newSearch() {
+        generation++;
+    }
+
+    /**
+     * Empties the table and resets the counters.
+     */
+    public void clear() {
+        for (ByteBuffer chunk : chunks) {
+            for (int offset = 0; offset < chunk.capacity(); offset += 8) {
+                LONGS.setOpaque(chunk, offset, 0L);
+            }
+        }
+        probes.reset();
+        hits.reset();
+        collisions.reset();
+        stores.reset();
+    }
+
+    /**
+     * @param data Packed entry data from probe.
+     * @return The stored best move.
+     */
+    public static int move(long data) {
+        return (int) (data & 0x1FFFF);
+    }
+
+    /**
+     * @param data Packed entry data from probe.
+     * @return The stored score.
+     */
+    public static int score(long data) {
+        return (short) (data >>> 17);
+    }
+
+    /**
+     * @param data Packed entry data from probe.
+     * @return The stored depth.
+     */
+    public static int depth(long data) {
+        return (int) ((data >>> 33) & 0xFF);
+    }
+
+    /**
+     * @param data Packed entry data from probe.
+     * @return The stored bound (LOWER, UPPER or EXACT).
+     */
+    public static int bound(long data) {
+        return (int) ((data >>> 41) & 0x3);
+    }
+
+    private static int generation(long data) {
+        return (int) ((data >>> 43) & 0xFF);
+    }
+
+    /**
+     * @return The number of entries in the table.
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return The number of lookups made.
+     */
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    /**
+     * @return The number of lookups that found their position.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that found a different position in the slot (or a
+     * torn write).
+     */
+    public long getCollisions() {
+        return collisions.sum();
+    }
+
+    /**
+     * @return The number of entries written.
+     */
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * Estimates how full the table is from its first thousand entries, counting only
+     * entries written by the current search (like the UCI "hashfull" value).
+     *
+     * @return The estimated fill in parts per thousand.
+     */
+    public int getHashFull() {
+        int sample = (int) Math.min(1000, entries);
+        int used = 0;
+        for (int i = 0; i < sample; i++) {
+            long data = (long) LONGS.getOpaque(chunks[0], i * ENTRY_BYTES + 8);
+            if (data != 0 && generation(data) == (generation & 0xFF)) {
+                used++;
+            }
+        }
+        return used * 1000 / sample;
+    }
+}
@@ -32,6 +32,9 @@
  * - Loading images from file paths or resources (like chess pieces and boards).
  * - Saving images in multiple formats (PNG, JPG, BMP).
  * - Setting and retrieving individual pixel values (RGB and Alpha components).
+ * - Wrapping images produced elsewhere, such as positions drawn by BoardRenderer.
+ *
+ * Each instance owns its own image, so any number of them can be used at once.
  */
 
 package com.george.images;
@@ -49,7 +52,7 @@ public class ChessImage {
     /**
      * The BufferedImage that holds the image data for the chess image.
      */
-    private static BufferedImage image;
+    private final BufferedImage image;
 
     /**
      * Creates a new ChessImage based on the file path to an existing image.
@@ -80,8 +83,18 @@ public class ChessImage {
         }
     }
 
+    /**
+     * Wraps an existing image, for example one drawn by BoardRenderer, so it can be
+     * inspected and saved like any other ChessImage.
+     *
+     * @param image The image to wrap; it is not copied.
+     */
+    public ChessImage(BufferedImage image) {
+        this.image = image;
+    }
+
     // Path to the image directory in the JAR file after compiled.
-    private static final String IMAGE_DIRECTORY = "/images/";
+    static final String IMAGE_DIRECTORY = "/images/";
 
     /**
      * Loads a chess piece image from the resources stored in the JAR file.
@@ -105,6 +118,13 @@ public class ChessImage {
         }
     }
 
+    /**
+     * @return The image held by this ChessImage.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
     /**
      * Saves the current BufferedImage to the specified file path.
      * The format is determined by the file extension (.png, .jpg/.jpeg, .bmp).
@@ -135,8 +155,7 @@ public class ChessImage {
      * @param blue The blue component (0-255).
      */
     public void setRGB(int x, int y, int red, int green, int blue) {
-        Color color = new Color(red, green, blue);
-        image.setRGB(x, y, color.getRGB());
+        setRGB(x, y, red, green, blue, 255);
     }
 
     /**
@@ -150,8 +169,8 @@ public class ChessImage {
      * @param alpha The alpha (transparency) component (0-255).
      */
     public void setRGB(int x, int y, int red, int green, int blue, int alpha) {
-        Color color = new Color(red, green, blue, alpha);
-        image.setRGB(x, y, color.getRGB());
+        // Pack the components as ARGB directly rather than through a Color object
+        image.setRGB(x, y, (alpha & 0xFF) << 24 | (red & 0xFF) << 16 | (green & 0xFF) << 8 | (blue & 0xFF));
     }
 
     /**
@@ -173,8 +192,7 @@ public class ChessImage {
      * @return The red component (0-255).
      */
     public int getRed(int x, int y) {
-        Color color = new Color(image.getRGB(x, y), true);
-        return color.getRed();
+        return (image.getRGB(x, y) >>> 16) & 0xFF;
     }
 
     /**
@@ -185,8 +203,7 @@ public class ChessImage {
      * @return The green component (0-255).
      */
     public int getGreen(int x, int y) {
-        Color color = new Color(image.getRGB(x, y), true);
-        return color.getGreen();
+        return (image.getRGB(x, y) >>> 8) & 0xFF;
     }
 
     /**
@@ -197,8 +214,7 @@ public class ChessImage {
      * @return The blue component (0-255).
      */
     public int getBlue(int x, int y) {
-        Color color = new Color(image.getRGB(x, y), true);
-        return color.getBlue();
+        return image.getRGB(x, y) & 0xFF;
     }
 
     /**
@@ -209,7 +225,6 @@ public class ChessImage {
      * @return The alpha component (0-255).
      */
     public int getAlpha(int x, int y) {
-        Color color = new Color(image.getRGB(x, y), true);
-        return color.getAlpha();
+        return (image.getRGB(x, y) >>> 24) & 0xFF;
     }
 }
@@ -32,6 +32,7 @@
  * Key functionalities include:
  * - Providing the file name associated with each chess piece image.
  * - Allowing easy access to chess piece images for rendering purposes.
+ * - Looking up the piece for a value stored on the ChessBoard (e.g., -3 for a black knight).
  */
 
 package com.george.images;
@@ -54,6 +55,13 @@ public enum ChessPiece {
     // The file name associated with the chess piece image
     private final String fileName;
 
+    // Pieces indexed by board value + 6 (black king = 0, empty = 6, white king = 12)
+    private static final ChessPiece[] BY_VALUE = {
+        BLACK_KING, BLACK_QUEEN, BLACK_BISHOP, BLACK_KNIGHT, BLACK_ROOK, BLACK_PAWN,
+        null,
+        WHITE_PAWN, WHITE_ROOK, WHITE_KNIGHT, WHITE_BISHOP, WHITE_QUEEN, WHITE_KING
+    };
+
     /**
      * Constructor to associate each chess piece with its corresponding image file.
      *
@@ -71,4 +79,16 @@ public enum ChessPiece {
     public String getFileName() {
         return fileName;
     }
+
+    /**
+     * Returns the piece for a value stored on the ChessBoard. Positive values are white
+     * pieces and negative values black pieces (1 = pawn, 2 = rook, 3 = knight,
+     * 4 = bishop, 5 = queen, 6 = king).
+     *
+     * @param pieceValue The board value.
+     * @return The piece, or null for an empty square or an unknown value.
+     */
+    public static ChessPiece of(int pieceValue) {
+        return pieceValue >= -6 && pieceValue <= 6 ? BY_VALUE[pieceValue + 6] : null;
+    }
 }
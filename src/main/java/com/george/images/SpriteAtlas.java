@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: SpriteAtlas
+ *
+ * This class decodes the twelve piece images once, scales them to one square size and
+ * packs them side by side into a single ARGB image (the atlas). The atlas's pixels are
+ * kept as a plain int array, so a renderer can copy a sprite with array reads instead
+ * of decoding PNGs or calling getRGB per pixel.
+ *
+ * An atlas never changes after it is built, so one instance per size is shared by
+ * every thread; get() returns it.
+ */
+
+package com.george.images;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.imageio.ImageIO;
+
+public final class SpriteAtlas {
+
+    // Shared atlases by square size
+    private static final Map<Integer, SpriteAtlas> ATLASES = new ConcurrentHashMap<>();
+
+    private final int size;
+    private final BufferedImage atlas;
+    private final int[] pixels;
+
+    /**
+     * Returns the shared atlas for a square size, building it on first use.
+     *
+     * @param size The width and height of one sprite in pixels.
+     * @return The atlas.
+     * @throws IOException If a piece image cannot be loaded.
+     */
+    public static SpriteAtlas get(int size) throws IOException {
+        try {
+            return ATLASES.computeIfAbsent(size, key -> {
+                try {
+                    return new SpriteAtlas(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Builds an atlas. Use get() to share one instead.
+     */
+    private SpriteAtlas(int size) throws IOException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Sprite size must be positive: " + size);
+        }
+        this.size = size;
+        this.atlas = new BufferedImage(12 * size, size, BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D g = atlas.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            for (int value = -6; value <= 6; value++) {
+                if (value != 0) {
+                    g.drawImage(load(ChessPiece.of(value)), index(value) * size, 0, size, size, null);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        this.pixels = ((DataBufferInt) atlas.getRaster().getDataBuffer()).getData();
+    }
+
+    private static BufferedImage load(ChessPiece piece) throws IOException {
+        String path = ChessImage.IMAGE_DIRECTORY + piece.getFileName();
+        try (InputStream stream = SpriteAtlas.class.getResourceAsStream(path)) {
+            if (stream == null) {
+                throw new IOException("File not found: " + path);
+            }
+            return ImageIO.read(stream);
+        }
+    }
+
+    /**
+     * Returns the cell of a piece in the atlas (white pawn .. king, then black).
+     *
+     * @param pieceValue The board value of the piece (non-zero).
+     * @return The cell index, 0 to 11.
+     */
+    private static int index(int pieceValue) {
+        return pieceValue > 0 ? pieceValue - 1 : 5 - pieceValue;
+    }
+
+    /**
+     * @return The width and height of one sprite in pixels.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return The atlas image; callers must not modify it.
+     */
+    public BufferedImage getImage() {
+        return atlas;
+    }
+
+    /**
+     * Returns one pixel of a piece's sprite.
+     *
+     * @param pieceValue The board value of the piece (non-zero).
+     * @param x The column inside the sprite.
+     * @param y The row inside the sprite.
+     * @return The pixel as non-premultiplied ARGB.
+     */
+    public int pixel(int pieceValue, int x, int y) {
+        return pixels[y * 12 * size + index(pieceValue) * size + x];
+    }
+
+    /**
+     * Draws a piece onto an opaque RGB pixel array, blending its edges with what is
+     * already there.
+     *
+     * @param pieceValue The board value of the piece (non-zero).
+     * @param target The pixels of the target image, one int per pixel, row by row.
+     * @param targetWidth The width of the target image.
+     * @param left The column of the sprite's top left corner in the target.
+     * @param top The row of the sprite's top left corner in the target.
+     */
+    public void draw(int pieceValue, int[] target, int targetWidth, int left, int top) {
+        int stride = 12 * size;
+        int source = index(pieceValue) * size;
+        for (int y = 0; y < size; y++) {
+            int src = source + y * stride;
+            int dst = (top + y) * targetWidth + left;
+            for (int x = 0; x < size; x++) {
+                int argb = pixels[src + x];
+                int alpha = argb >>> 24;
+                if (alpha == 255) {
+                    target[dst + x] = argb & 0xFFFFFF;
+                } else if (alpha != 0) {
+                    target[dst + x] = blend(argb, target[dst + x], alpha);
+                }
+            }
+        }
+    }
+
+    private static int blend(int argb, int rgb, int alpha) {
+        int inverse = 255 - alpha;
+        int r = (((argb >> 16) & 0xFF) * alpha + ((rgb >> 16) & 0xFF) * inverse) / 255;
+        int g = (((argb >> 8) & 0xFF) * alpha + ((rgb >> 8) & 0xFF) * inverse) / 255;
+        int b = ((argb & 0xFF) * alpha + (rgb & 0xFF) * inverse) / 255;
+        return r << 16 | g << 8 | b;
+    }
+}
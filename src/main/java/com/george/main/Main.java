@@ -1,11 +1,33 @@
 package com.george.main;
 
+import com.george.board.ChessBoard;
+import com.george.board.GameState;
+import com.george.board.Move;
+import com.george.book.PolyglotBook;
+import com.george.dataset.DatasetGenerator;
+import com.george.engine.SearchResult;
+import com.george.pgn.PgnGame;
+import com.george.pgn.PgnWriter;
+import com.george.stockfish.EvalCache;
+import com.george.stockfish.SearchLimits;
 import com.george.stockfish.StockfishConnector;
 import com.george.window.ChessWindow;
+import com.george.window.SpectatorGrid;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.layout.Pane;
+import javafx.stage.Stage;
 
+import java.io.BufferedWriter;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Main class to play a full chess game with Stockfish moving pieces on the
@@ -16,7 +38,28 @@ public class Main {
     private static ChessWindow chessWindow;
     private static StockfishConnector stockfish;
 
-    public static void main(String[] args) {
+    // Where played games are appended
+    private static final String GAMES_FILE = "games.pgn";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // "selfplay [options]" plays engine games without opening a window (see SelfPlay)
+        if (args.length > 0 && args[0].equals("selfplay")) {
+            SelfPlay.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // "spectate [options]" plays the same games and shows them all in one window
+        if (args.length > 0 && args[0].equals("spectate")) {
+            spectate(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // "dataset <output> <games> [options]" scores games into training data (see DatasetGenerator)
+        if (args.length > 0 && args[0].equals("dataset")) {
+            DatasetGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         // Launch the ChessWindow in the JavaFX Application Thread
         Platform.startup(() -> {
             try {
@@ -41,13 +84,57 @@ public class Main {
         });
     }
 
+    /**
+     * Runs self-play games (see SelfPlay for the arguments) and shows every game being
+     * played in a grid of small boards.
+     */
+    private static void spectate(String[] args) {
+        int boards = SelfPlay.parallelism(args);
+        Platform.startup(() -> {
+            try {
+                int columns = (int) Math.ceil(Math.sqrt(boards));
+                SpectatorGrid grid = new SpectatorGrid(boards, columns, 24);
+                Canvas canvas = grid.getCanvas();
+
+                Stage stage = new Stage();
+                stage.setTitle("King Fischer (Self-play)");
+                stage.setScene(new Scene(new Pane(canvas), canvas.getWidth(), canvas.getHeight()));
+                stage.show();
+                grid.start();
+
+                Thread games = new Thread(() -> {
+                    try {
+                        // Workers beyond the number of tiles play unseen
+                        SelfPlay.run(args, (board, worker) -> {
+                            if (worker < grid.getBoardCount()) {
+                                grid.watch(worker, board);
+                            }
+                        });
+                    } catch (IOException | InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }, "self-play");
+                games.setDaemon(true);  // Ensure it exits when the application closes
+                games.start();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
     private static void playGameWithStockfish() throws IOException, InterruptedException {
         stockfish = new StockfishConnector();
-        StringBuilder moveHistory = new StringBuilder();  // Store the move history
+        ChessBoard game = new ChessBoard();  // The game so far, with its moves on the undo stack
 
         // Start Stockfish engine
         if (stockfish.startEngine()) {
+            EvalCache cache = null;
+            // Opening moves come from the book, if there is one, until the game leaves it
+            PolyglotBook book = PolyglotBook.openDefault();
             try {
+                // Positions searched in earlier runs are answered from the cache
+                cache = new EvalCache();
+
                 // Initialize UCI mode
                 stockfish.sendCommand("uci");
                 stockfish.getResponse();  // Wait for UCI initialization
@@ -56,8 +143,8 @@ public class Main {
                 stockfish.sendCommand("isready");
                 stockfish.getResponse();
 
-                // Set the initial chess position to the standard starting position
-                stockfish.sendCommand("position startpos");
+                // Start a new game from the standard starting position
+                stockfish.newGame();
 
                 // This must be done on the JavaFX thread!
                 Platform.runLater(() -> {
@@ -68,44 +155,62 @@ public class Main {
                     }
                 });
 
+                // The moves are recorded and the game saved as PGN when it ends
+                PgnGame record = new PgnGame();
+                record.setTag("Event", "King Fischer");
+                record.setTag("Date", LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd")));
+                record.setTag("White", "Stockfish");
+                record.setTag("Black", "Stockfish");
+
                 // Play moves until the game ends
                 boolean gameOver = false;
                 boolean isWhiteToMove = true;  // White starts the game
 
                 while (!gameOver) {
-                    // Send command to Stockfish to calculate the best move
-                    stockfish.sendCommand("go movetime 1000");
-                    String bestMove = stockfish.getBestMove();
-
-                    if (bestMove == null || bestMove.isEmpty()) {
-                        break;  // Game is over if no valid move is returned
+                    int move = Move.NONE;
+                    if (book != null) {
+                        move = book.pickMove(game, ThreadLocalRandom.current());
+                        if (move == Move.NONE) {
+                            System.out.println("Out of book");
+                            book.close();
+                            book = null;
+                        } else {
+                            System.out.println("Book Move: " + Move.toUci(move));
+                        }
                     }
-
-                    System.out.println("Best Move: " + bestMove);
-
-                    // Append the best move to the move history
-                    if (moveHistory.length() > 0) {
-                        moveHistory.append(" ");  // Separate moves with a space
+                    if (move == Move.NONE) {
+                        // Ask Stockfish (or the cache) for the best move in the current position
+                        move = search(cache, game);
+                        if (move == Move.NONE) {
+                            break;  // Game is over if no valid move is returned
+                        }
+                        System.out.println("Best Move: " + Move.toUci(move));
                     }
-                    moveHistory.append(bestMove);  // Add the current move to history
+                    String bestMove = Move.toUci(move);
+
+                    // Play the best move on our copy of the game
+                    game.makeMove(move);
+                    record.addMove(move);
 
                     // Move the piece on the board (this must be done on the JavaFX thread)
                     Platform.runLater(() -> {
                         try {
-                            chessWindow.movePiece(bestMove);
-                            chessWindow.displayChessPieces(-1, -1);  // Update the visual board
+                            chessWindow.movePiece(bestMove);  // The window redraws the changed squares
                         } catch (Exception e) {
                             e.printStackTrace();
                         }
                     });
 
                     // Check if the game is over (e.g., checkmate or draw)
-                    if (isGameOver(bestMove)) {
-                        System.out.println("Game over: " + getGameOverReason(bestMove));
+                    GameState state = game.getGameState();
+                    if (state.isOver()) {
+                        System.out.println("Game over: " + getGameOverReason(game, state));
+                        if (state.isDraw()) {
+                            record.setResult(PgnGame.DRAW);
+                        } else {
+                            record.setResult(game.currentPlayer() == ChessBoard.Player.WHITE ? PgnGame.BLACK_WINS : PgnGame.WHITE_WINS);
+                        }
                         gameOver = true;
-                    } else {
-                        // Update the position with the entire move history for Stockfish
-                        stockfish.sendCommand("position startpos moves " + moveHistory.toString());
                     }
 
                     // Alternate between white and black
@@ -114,29 +219,58 @@ public class Main {
                     // Give some delay to make the game more visible
                     Thread.sleep(500);  // 0.5 second delay for better visualization
                 }
+                saveGame(record);
             } finally {
                 // Stop the Stockfish engine
                 stockfish.stopEngine();
+                if (cache != null) {
+                    System.out.println(cache);
+                    cache.close();
+                }
+                if (book != null) {
+                    book.close();
+                }
             }
         } else {
             System.out.println("Failed to start Stockfish engine.");
         }
     }
 
-    private static boolean isGameOver(String bestMove) {
-        // Simple condition to determine if the game is over (can be improved)
-        return bestMove.equals("resign") || bestMove.contains("mate") || bestMove.equals("1/2-1/2");
+    /**
+     * Appends a finished game to GAMES_FILE.
+     */
+    private static void saveGame(PgnGame record) {
+        try (PgnWriter pgn = new PgnWriter(new BufferedWriter(new FileWriter(GAMES_FILE, true)))) {
+            pgn.write(record);
+            System.out.println("Game saved to " + GAMES_FILE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
-    private static String getGameOverReason(String bestMove) {
-        if (bestMove.equals("resign")) {
-            return "Resignation";
-        } else if (bestMove.contains("mate")) {
-            return "Checkmate";
-        } else if (bestMove.equals("1/2-1/2")) {
-            return "Draw";
-        } else {
-            return "Unknown end";
+    /**
+     * Searches the game's current position for one second, using the cache when the
+     * position has been searched before.
+     *
+     * @return The best move, or Move.NONE if the game is over.
+     */
+    private static int search(EvalCache cache, ChessBoard game) throws IOException, InterruptedException {
+        try {
+            SearchResult result = cache.go(stockfish, game, SearchLimits.moveTime(1000)).get();
+            return result.getBestMove();
+        } catch (ExecutionException e) {
+            throw new IOException("Stockfish search failed", e.getCause());
+        }
+    }
+
+    /**
+     * Describes how a finished game ended, e.g. "Checkmate, White wins".
+     */
+    private static String getGameOverReason(ChessBoard game, GameState state) {
+        if (state == GameState.CHECKMATE) {
+            // The side to move has been mated
+            return game.currentPlayer() == ChessBoard.Player.WHITE ? "Checkmate, Black wins" : "Checkmate, White wins";
         }
+        return "Draw by " + state.getDescription();
     }
 }
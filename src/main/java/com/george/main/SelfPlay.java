@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: SelfPlay
+ *
+ * This class plays Stockfish against itself without any user interface, running many
+ * games in parallel and as fast as the engines can move. A game ends as soon as the
+ * board reports it over (see ChessBoard.getGameState). Each side gets its own search
+ * limits, so one setting can be tested against another. Every finished game is
+ * appended to a PGN file, and a summary of the results is printed at the end.
+ *
+ * Games can also be watched live: with a spectator set, each worker thread hands over
+ * the board of every game it starts, with its own number, so that a user interface
+ * (such as a SpectatorGrid) can follow the board.
+ *
+ * Usage: SelfPlay [games] [parallel] [white limits] [black limits] [pgn file] [stockfish path]
+ * where limits look like "movetime=100", "depth=10" or "nodes=50000" (see
+ * SearchLimits.parse).
+ */
+
+package com.george.main;
+
+import com.george.board.ChessBoard;
+import com.george.board.GameState;
+import com.george.board.Move;
+import com.george.engine.SearchResult;
+import com.george.pgn.PgnGame;
+import com.george.pgn.PgnWriter;
+import com.george.stockfish.SearchLimits;
+import com.george.stockfish.StockfishConnector;
+import com.george.stockfish.StockfishPool;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjIntConsumer;
+
+public class SelfPlay {
+
+    // How long a game holding its White engine waits for a Black one before handing
+    // White back, so that two games each holding one engine cannot block each other
+    private static final long PAIR_WAIT_MILLIS = 1000;
+
+    private final StockfishPool pool;
+    private final SearchLimits whiteLimits;
+    private final SearchLimits blackLimits;
+    private final int maxPlies;
+
+    // Results so far
+    private final LongAdder whiteWins = new LongAdder();
+    private final LongAdder blackWins = new LongAdder();
+    private final LongAdder draws = new LongAdder();
+    private final LongAdder plies = new LongAdder();
+    private final Map<String, LongAdder> terminations = new ConcurrentHashMap<>();
+
+    // Is given each new game's board and the worker playing it, or null
+    private volatile ObjIntConsumer<ChessBoard> spectator;
+
+    /**
+     * Creates a self-play runner.
+     *
+     * @param pool The engines to play with; each game borrows two of them.
+     * @param whiteLimits How long White searches each move.
+     * @param blackLimits How long Black searches each move.
+     * @param maxPlies The length after which a game is stopped as a draw.
+     */
+    public SelfPlay(StockfishPool pool, SearchLimits whiteLimits, SearchLimits blackLimits, int maxPlies) {
+        this.pool = pool;
+        this.whiteLimits = whiteLimits;
+        this.blackLimits = blackLimits;
+        this.maxPlies = maxPlies;
+    }
+
+    /**
+     * Lets the games being played be watched. The spectator is called on the worker's
+     * thread with the board of each new game, before its first move, and the worker's
+     * number (0 to parallel - 1), so it can attach a BoardListener to the board.
+     *
+     * @param spectator Receives the boards, or null for none.
+     */
+    public void setSpectator(ObjIntConsumer<ChessBoard> spectator) {
+        this.spectator = spectator;
+    }
+
+    /**
+     * Plays games on several threads at once, writing each finished game to the PGN
+     * writer.
+     *
+     * @param games The number of games to play.
+     * @param parallel The number of games played at the same time. With fewer than two
+     * engines per game in the pool, games take turns.
+     * @param pgn Where the games are written, or null to keep only the summary.
+     * @throws InterruptedException If the thread is interrupted while waiting for the games.
+     */
+    public void run(int games, int parallel, PgnWriter pgn) throws InterruptedException {
+        AtomicInteger nextRound = new AtomicInteger(1);
+        Thread[] workers = new Thread[parallel];
+        for (int i = 0; i < parallel; i++) {
+            int worker = i;
+            workers[i] = new Thread(() -> {
+                int round;
+                while ((round = nextRound.getAndIncrement()) <= games) {
+                    try {
+                        PgnGame game = play(round, worker);
+                        if (pgn != null) {
+                            synchronized (pgn) {
+                                pgn.write(game);
+                                pgn.flush();
+                            }
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();  // Skip the game; the engine is replaced on release
+                        if (pool.getEngineCount() < 2) {
+                            return;  // No game can be played any more
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "self-play-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Plays one game from the starting position, borrowing one engine for each side.
+     *
+     * @param round The number of the game, written to the Round tag.
+     * @return The finished game.
+     * @throws IOException If an engine fails.
+     * @throws InterruptedException If the thread is interrupted while waiting for an engine.
+     */
+    public PgnGame play(int round) throws IOException, InterruptedException {
+        return play(round, -1);
+    }
+
+    /**
+     * Plays one game, handing its board to the spectator if there is one.
+     */
+    private PgnGame play(int round, int worker) throws IOException, InterruptedException {
+        StockfishConnector white = null;
+        StockfishConnector black = null;
+        try {
+            while (black == null) {
+                if (pool.getEngineCount() < 2) {
+                    throw new IOException("A game needs two engines but the pool has " + pool.getEngineCount());
+                }
+                white = pool.acquire();
+                black = pool.acquire(PAIR_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                if (black == null) {
+                    StockfishConnector handBack = white;
+                    white = null;
+                    pool.release(handBack);
+                }
+            }
+
+            PgnGame game = new PgnGame();
+            game.setTag("Event", "Self-play");
+            game.setTag("Date", LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd")));
+            game.setTag("Round", Integer.toString(round));
+            game.setTag("White", "Stockfish " + whiteLimits);
+            game.setTag("Black", "Stockfish " + blackLimits);
+
+            ChessBoard board = new ChessBoard();
+            ObjIntConsumer<ChessBoard> watcher = spectator;
+            if (watcher != null && worker >= 0) {
+                watcher.accept(board, worker);
+            }
+            String termination;
+            while (true) {
+                boolean whiteToMove = board.currentPlayer() == ChessBoard.Player.WHITE;
+                GameState state = board.getGameState();
+                if (state.isOver()) {
+                    termination = state.getDescription();
+                    if (state.isDraw()) {
+                        game.setResult(PgnGame.DRAW);
+                    } else {
+                        game.setResult(whiteToMove ? PgnGame.BLACK_WINS : PgnGame.WHITE_WINS);
+                    }
+                    break;
+                }
+                if (game.getMoveCount() >= maxPlies) {
+                    termination = "move limit";
+                    game.setResult(PgnGame.DRAW);
+                    break;
+                }
+
+                int move = search(whiteToMove ? white : black, board, whiteToMove ? whiteLimits : blackLimits);
+                board.makeMove(move);
+                game.addMove(move);
+            }
+
+            game.setTag("Termination", termination);
+            record(game, termination);
+            return game;
+        } finally {
+            if (white != null) {
+                pool.release(white);
+            }
+            if (black != null) {
+                pool.release(black);
+            }
+        }
+    }
+
+    /**
+     * Asks an engine for its move and waits for the answer.
+     */
+    private static int search(StockfishConnector engine, ChessBoard board, SearchLimits limits) throws IOException, InterruptedException {
+        SearchResult result;
+        try {
+            result = engine.go(board, limits).get();
+        } catch (ExecutionException e) {
+            throw new IOException("Stockfish search failed", e.getCause());
+        }
+        if (result.getBestMove() == Move.NONE) {
+            throw new IOException("Stockfish gave no move in " + board.toFen());
+        }
+        return result.getBestMove();
+    }
+
+    private void record(PgnGame game, String termination) {
+        switch (game.getResult()) {
+            case PgnGame.WHITE_WINS -> whiteWins.increment();
+            case PgnGame.BLACK_WINS -> blackWins.increment();
+            default -> draws.increment();
+        }
+        plies.add(game.getMoveCount());
+        terminations.computeIfAbsent(termination, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return The number of games White has won.
+     */
+    public long getWhiteWins() {
+        return whiteWins.sum();
+    }
+
+    /**
+     * @return The number of games Black has won.
+     */
+    public long getBlackWins() {
+        return blackWins.sum();
+    }
+
+    /**
+     * @return The number of drawn games.
+     */
+    public long getDraws() {
+        return draws.sum();
+    }
+
+    /**
+     * @return The number of moves (plies) played in all games.
+     */
+    public long getPlies() {
+        return plies.sum();
+    }
+
+    /**
+     * Prints the results: wins, draws, White's score, how the games ended and the
+     * number of moves played per second.
+     *
+     * @param elapsedMillis The time the games took.
+     */
+    public void printSummary(long elapsedMillis) {
+        long games = getWhiteWins() + getBlackWins() + getDraws();
+        double score = games > 0 ? (getWhiteWins() + 0.5 * getDraws()) / games : 0.0;
+        System.out.println("Games: " + games + "  White " + whiteLimits + "  Black " + blackLimits);
+        System.out.printf("  +%d =%d -%d  (White scores %.1f%%)%n", getWhiteWins(), getDraws(), getBlackWins(), 100 * score);
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(terminations).entrySet()) {
+            System.out.println("  " + entry.getKey() + ": " + entry.getValue().sum());
+        }
+        System.out.printf("  %d moves in %.1f s (%.1f moves/s)%n", getPlies(), elapsedMillis / 1000.0,
+                elapsedMillis > 0 ? getPlies() * 1000.0 / elapsedMillis : 0.0);
+    }
+
+    /**
+     * Runs a self-play match from the command line.
+     *
+     * @param args [games] [parallel] [white limits] [black limits] [pgn file] [stockfish path]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        run(args, null);
+    }
+
+    /**
+     * @param args The command line arguments (see main).
+     * @return The number of games played at the same time.
+     */
+    public static int parallelism(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int parallel = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return Math.min(parallel, games);
+    }
+
+    /**
+     * Runs a self-play match described by command line arguments (see main).
+     *
+     * @param args The command line arguments.
+     * @param spectator Receives each new game's board and worker number, or null.
+     * @throws IOException If the engines cannot be started or the PGN file written.
+     * @throws InterruptedException If the thread is interrupted while the games run.
+     */
+    public static void run(String[] args, ObjIntConsumer<ChessBoard> spectator) throws IOException, InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int parallel = parallelism(args);
+        SearchLimits white = SearchLimits.parse(args.length > 2 ? args[2] : "movetime=100");
+        SearchLimits black = SearchLimits.parse(args.length > 3 ? args[3] : "movetime=100");
+        String pgnFile = args.length > 4 ? args[4] : "selfplay.pgn";
+        String path = args.length > 5 ? args[5] : StockfishConnector.DEFAULT_PATH;
+
+        long start = System.nanoTime();
+        try (StockfishPool pool = new StockfishPool(2 * parallel, path);
+             PgnWriter pgn = new PgnWriter(new BufferedWriter(new FileWriter(pgnFile)))) {
+            SelfPlay selfPlay = new SelfPlay(pool, white, black, GameState.DEFAULT_MAX_PLIES);
+            selfPlay.setSpectator(spectator);
+            selfPlay.run(games, parallel, pgn);
+            selfPlay.printSummary((System.nanoTime() - start) / 1_000_000L);
+        }
+        System.out.println("Games written to " + pgnFile);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: PgnGame
+ *
+ * This class holds one game as it appears in a PGN file: its tag pairs (Event, Site,
+ * White, Black, Result and so on), the position it started from, its moves as packed
+ * ints (see Move) and its result.
+ */
+
+package com.george.pgn;
+
+import com.george.board.ChessBoard;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class PgnGame {
+
+    // Results as written in PGN
+    public static final String WHITE_WINS = "1-0";
+    public static final String BLACK_WINS = "0-1";
+    public static final String DRAW = "1/2-1/2";
+    public static final String UNKNOWN = "*";
+
+    // Tag pairs in the order they are written; the Seven Tag Roster comes first
+    private final Map<String, String> tags = new LinkedHashMap<>();
+
+    private String startFen;
+    private int[] moves = new int[128];
+    private int moveCount;
+
+    /**
+     * Creates a game from the standard starting position with the Seven Tag Roster set
+     * to unknown values.
+     */
+    public PgnGame() {
+        tags.put("Event", "?");
+        tags.put("Site", "?");
+        tags.put("Date", "????.??.??");
+        tags.put("Round", "?");
+        tags.put("White", "?");
+        tags.put("Black", "?");
+        tags.put("Result", UNKNOWN);
+    }
+
+    /**
+     * Sets a tag pair, keeping its place if it is already present.
+     *
+     * @param name The tag name (e.g., "White").
+     * @param value The tag value.
+     */
+    public void setTag(String name, String value) {
+        tags.put(name, value);
+    }
+
+    /**
+     * @param name The tag name.
+     * @return The tag value, or null if the tag is not set.
+     */
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    /**
+     * @return The tag pairs in the order they are written.
+     */
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * @return The result: WHITE_WINS, BLACK_WINS, DRAW or UNKNOWN.
+     */
+    public String getResult() {
+        return tags.get("Result");
+    }
+
+    /**
+     * @param result The result: WHITE_WINS, BLACK_WINS, DRAW or UNKNOWN.
+     */
+    public void setResult(String result) {
+        tags.put("Result", result);
+    }
+
+    /**
+     * @return The FEN of the starting position, or null for the standard starting position.
+     */
+    public String getStartFen() {
+        return startFen;
+    }
+
+    /**
+     * Sets the position the game started from. A game that does not start from the
+     * standard position is written with the SetUp and FEN tags.
+     *
+     * @param fen The FEN, or null for the standard starting position.
+     */
+    public void setStartFen(String fen) {
+        this.startFen = fen;
+    }
+
+    /**
+     * @return A new board set to the starting position of the game.
+     */
+    public ChessBoard startPosition() {
+        return startFen == null ? new ChessBoard() : ChessBoard.fromFen(startFen);
+    }
+
+    /**
+     * Appends a move to the game.
+     *
+     * @param move The packed move, legal in the position reached so far.
+     */
+    public void addMove(int move) {
+        if (moveCount == moves.length) {
+            moves = Arrays.copyOf(moves, moveCount * 2);
+        }
+        moves[moveCount++] = move;
+    }
+
+    /**
+     * @return The number of moves (plies) in the game.
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @param index The ply, starting at 0.
+     * @return The packed move.
+     */
+    public int getMove(int index) {
+        if (index < 0 || index >= moveCount) {
+            throw new IndexOutOfBoundsException("No move " + index + " in a game of " + moveCount);
+        }
+        return moves[index];
+    }
+
+    /**
+     * @return A copy of the moves.
+     */
+    public int[] getMoves() {
+        return Arrays.copyOf(moves, moveCount);
+    }
+}
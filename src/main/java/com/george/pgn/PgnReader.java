@@ -0,0 +1,526 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: PgnReader
+ *
+ * This class reads PGN (Portable Game Notation) files of any size, one game at a time,
+ * with the move parsing spread over all processors.
+ *
+ * The file is read through a FileChannel in large blocks (8 MB by default). Each block
+ * is cut into game chunks on the reading thread: a game starts at a tag line that
+ * follows movetext, and a game cut off at the end of a block is carried over to the
+ * next one. The chunks of a block are then parsed on a ForkJoinPool, splitting the
+ * block in halves down to a few games per task. Parsing turns the SAN moves into
+ * packed moves on a ChessBoard per thread, reading straight from the bytes.
+ *
+ * Games come out in file order through nextGame() or forEach(), while several blocks
+ * ahead are already being parsed. Comments, variations, NAGs and move numbers are
+ * skipped. A game with a move that is not legal is left out and counted in
+ * getErrorCount().
+ *
+ * Usage: PgnReader <pgn file> [pgn output file]
+ * reads a file, prints how fast it was parsed and optionally writes the games back out.
+ */
+
+package com.george.pgn;
+
+import com.george.board.ChessBoard;
+import com.george.board.Move;
+import com.george.board.San;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class PgnReader implements Closeable {
+
+    // Size of the blocks read from the file
+    public static final int DEFAULT_BLOCK_BYTES = 8 << 20;
+
+    // A task parses at most this many games itself instead of splitting further
+    private static final int GAMES_PER_TASK = 16;
+
+    // Errors beyond this many are only counted
+    private static final int ERRORS_PRINTED = 10;
+
+    // The starting position, copied into each thread's board at the start of a game
+    private static final ChessBoard START = new ChessBoard();
+
+    // One board per parsing thread
+    private static final ThreadLocal<ChessBoard> BOARDS = ThreadLocal.withInitial(ChessBoard::new);
+
+    private final FileChannel channel;
+    private final ForkJoinPool pool;
+    private final int lookahead;
+    private int blockBytes;
+
+    // Blocks being parsed, in file order
+    private final ArrayDeque<Block> pending = new ArrayDeque<>();
+    private PgnGame[] current = new PgnGame[0];
+    private int currentIndex;
+
+    // The start of a game cut off at the end of the last block
+    private byte[] carry = new byte[0];
+    private boolean endOfFile;
+    private long gamesRead;
+
+    private final AtomicLong errors = new AtomicLong();
+    private long bytesRead;
+
+    /**
+     * Opens a PGN file, parsing on the common ForkJoinPool.
+     *
+     * @param file The file.
+     * @throws IOException If the file cannot be opened.
+     */
+    public PgnReader(Path file) throws IOException {
+        this(file, ForkJoinPool.commonPool(), DEFAULT_BLOCK_BYTES);
+    }
+
+    /**
+     * Opens a PGN file.
+     *
+     * @param file The file.
+     * @param pool The pool the games are parsed on.
+     * @param blockBytes The size of the blocks read at a time; a block grows if a single
+     * game does not fit.
+     * @throws IOException If the file cannot be opened.
+     */
+    public PgnReader(Path file, ForkJoinPool pool, int blockBytes) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.pool = pool;
+        this.blockBytes = blockBytes;
+        this.lookahead = pool.getParallelism() + 1;
+    }
+
+    /**
+     * @return The next game in the file, or null at the end.
+     * @throws IOException If the file cannot be read.
+     */
+    public PgnGame nextGame() throws IOException {
+        while (true) {
+            while (currentIndex < current.length) {
+                PgnGame game = current[currentIndex++];
+                if (game != null) {
+                    return game;
+                }
+            }
+            fill();
+            Block block = pending.poll();
+            if (block == null) {
+                return null;
+            }
+            block.task.join();
+            current = block.games;
+            currentIndex = 0;
+        }
+    }
+
+    /**
+     * Hands every remaining game to a consumer, in file order, on the calling thread.
+     *
+     * @param consumer Receives the games.
+     * @throws IOException If the file cannot be read.
+     */
+    public void forEach(Consumer<PgnGame> consumer) throws IOException {
+        PgnGame game;
+        while ((game = nextGame()) != null) {
+            consumer.accept(game);
+        }
+    }
+
+    /**
+     * @return The number of games left out because they could not be parsed.
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * @return The number of bytes read from the file so far.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Block block : pending) {
+            block.task.cancel(false);
+        }
+        pending.clear();
+        channel.close();
+    }
+
+    /**
+     * Reads blocks and starts parsing them until enough are in progress.
+     */
+    private void fill() throws IOException {
+        while (pending.size() < lookahead && !endOfFile) {
+            Block block = readBlock();
+            if (block != null) {
+                block.task = pool.submit(new ParseTask(block, 0, block.count));
+                pending.add(block);
+            }
+        }
+    }
+
+    /**
+     * Reads the next block of the file and finds where its games start. The last game is
+     * kept back for the next block unless the file has ended.
+     *
+     * @return The block, or null if it holds no games.
+     */
+    private Block readBlock() throws IOException {
+        byte[] data = Arrays.copyOf(carry, Math.max(blockBytes, 2 * carry.length));
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(carry.length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                endOfFile = true;
+                break;
+            }
+            bytesRead += read;
+        }
+        int length = buffer.position();
+
+        int[] starts = findGames(data, length);
+        int count = starts.length - 1;
+        int end = length;
+        if (!endOfFile) {
+            // The last game may go on in the next block
+            count--;
+            end = starts[count];
+            if (count == 0) {
+                // One game filled the whole block: read again with a larger one
+                carry = Arrays.copyOf(data, length);
+                blockBytes = Math.max(blockBytes, 2 * length);
+                return null;
+            }
+        }
+        carry = Arrays.copyOfRange(data, end, length);
+        starts[count] = end;
+
+        Block block = new Block(data, starts, count, gamesRead);
+        gamesRead += count;
+        return block;
+    }
+
+    /**
+     * Finds the offsets where games start: a line starting with '[' that comes after
+     * movetext, outside of a comment. The returned array ends with the length.
+     */
+    private static int[] findGames(byte[] data, int length) {
+        int[] starts = new int[64];
+        int count = 0;
+        boolean movetext = true;  // So that the first tag line starts a game
+        boolean comment = false;
+        boolean lineStart = true;
+        for (int i = 0; i < length; i++) {
+            byte c = data[i];
+            if (comment) {
+                comment = c != '}';
+            } else if (c == '{') {
+                comment = true;
+            } else if (lineStart && c == '[') {
+                if (movetext) {
+                    if (count + 1 >= starts.length) {
+                        starts = Arrays.copyOf(starts, starts.length * 2);
+                    }
+                    starts[count++] = i;
+                    movetext = false;
+                }
+            } else if (lineStart && c > ' ') {
+                movetext = true;
+            }
+            lineStart = c == '\n';
+        }
+        if (count == 0) {
+            starts[count++] = 0;  // Text without tags is taken as one game
+        }
+        starts[count] = length;
+        return Arrays.copyOf(starts, count + 1);
+    }
+
+    /**
+     * A block of the file and the games parsed from it.
+     */
+    private static final class Block {
+        private final byte[] data;
+        private final int[] starts;  // Offsets of the games; starts[count] is the end
+        private final int count;
+        private final long firstGame;  // Number of games before this block
+        private final PgnGame[] games;
+        private ForkJoinTask<?> task;
+
+        private Block(byte[] data, int[] starts, int count, long firstGame) {
+            this.data = data;
+            this.starts = starts;
+            this.count = count;
+            this.firstGame = firstGame;
+            this.games = new PgnGame[count];
+        }
+    }
+
+    /**
+     * Parses a range of the games in a block, splitting it in two while it is large.
+     */
+    @SuppressWarnings("serial")  // Never serialized
+    private final class ParseTask extends RecursiveAction {
+        private final Block block;
+        private final int from;
+        private final int to;
+
+        private ParseTask(Block block, int from, int to) {
+            this.block = block;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > GAMES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(block, from, middle), new ParseTask(block, middle, to));
+                return;
+            }
+            ChessBoard board = BOARDS.get();
+            for (int i = from; i < to; i++) {
+                try {
+                    block.games[i] = parseGame(block.data, block.starts[i], block.starts[i + 1], board);
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    if (errors.incrementAndGet() <= ERRORS_PRINTED) {
+                        System.out.println("Skipping PGN game " + (block.firstGame + i + 1) + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses one game from its bytes.
+     *
+     * @return The game, or null if the chunk holds no tags and no moves.
+     * @throws IllegalArgumentException If a move is not legal or the FEN tag is broken.
+     */
+    static PgnGame parseGame(byte[] data, int start, int end, ChessBoard board) {
+        PgnGame game = new PgnGame();
+        board.copyFrom(START);
+        boolean empty = true;
+
+        int i = start;
+        int variations = 0;
+        while (i < end) {
+            byte c = data[i];
+            if (c <= ' ') {
+                i++;
+            } else if (c == '[' && variations == 0 && game.getMoveCount() == 0) {
+                i = parseTag(data, i, end, game, board);
+                empty = false;
+            } else if (c == '{') {
+                while (i < end && data[i] != '}') {
+                    i++;
+                }
+                i++;
+            } else if (c == ';' || (c == '%' && (i == start || data[i - 1] == '\n'))) {
+                while (i < end && data[i] != '\n') {
+                    i++;
+                }
+            } else if (c == '(') {
+                variations++;
+                i++;
+            } else if (c == ')') {
+                variations = Math.max(0, variations - 1);
+                i++;
+            } else {
+                int tokenEnd = i;
+                while (tokenEnd < end && data[tokenEnd] > ' ' && !isDelimiter(data[tokenEnd])) {
+                    tokenEnd++;
+                }
+                if (variations == 0 && c != '$') {
+                    parseToken(data, i, tokenEnd, game, board);
+                    empty = false;
+                }
+                i = tokenEnd;
+            }
+        }
+        return empty ? null : game;
+    }
+
+    private static boolean isDelimiter(byte c) {
+        return c == '{' || c == '}' || c == '(' || c == ')' || c == ';';
+    }
+
+    /**
+     * Reads a tag pair such as [White "Carlsen, Magnus"].
+     *
+     * @return The index just past the tag.
+     */
+    private static int parseTag(byte[] data, int i, int end, PgnGame game, ChessBoard board) {
+        int nameStart = i + 1;
+        int nameEnd = nameStart;
+        while (nameEnd < end && data[nameEnd] > ' ' && data[nameEnd] != '"' && data[nameEnd] != ']') {
+            nameEnd++;
+        }
+        int quote = nameEnd;
+        while (quote < end && data[quote] != '"' && data[quote] != '\n') {
+            quote++;
+        }
+        if (quote >= end || data[quote] != '"') {
+            return quote;  // Not a tag pair; skip the line
+        }
+
+        // The value, with backslash escapes removed
+        byte[] value = new byte[16];
+        int length = 0;
+        int j = quote + 1;
+        while (j < end && data[j] != '"' && data[j] != '\n') {
+            if (data[j] == '\\' && j + 1 < end) {
+                j++;
+            }
+            if (length == value.length) {
+                value = Arrays.copyOf(value, length * 2);
+            }
+            value[length++] = data[j++];
+        }
+        while (j < end && data[j] != '\n') {
+            j++;
+        }
+
+        String name = new String(data, nameStart, nameEnd - nameStart, StandardCharsets.US_ASCII);
+        String text = new String(value, 0, length, StandardCharsets.UTF_8);
+        game.setTag(name, text);
+        if (name.equals("FEN")) {
+            board.setFen(text);
+            game.setStartFen(text);
+        }
+        return j;
+    }
+
+    /**
+     * Reads one movetext token: a move number, a result or a move in SAN.
+     */
+    private static void parseToken(byte[] data, int start, int end, PgnGame game, ChessBoard board) {
+        // Results end the movetext; the Result tag is kept if it is already known
+        String result = resultToken(data, start, end);
+        if (result != null) {
+            if (PgnGame.UNKNOWN.equals(game.getResult())) {
+                game.setResult(result);
+            }
+            return;
+        }
+
+        // Move numbers: "12." or "12...", possibly run together with the move ("12.e4")
+        int digits = start;
+        while (digits < end && data[digits] >= '0' && data[digits] <= '9') {
+            digits++;
+        }
+        if (digits > start && (digits == end || data[digits] == '.')) {
+            start = digits;
+            while (start < end && data[start] == '.') {
+                start++;
+            }
+            if (start == end) {
+                return;
+            }
+        }
+        if (end - start == 4 && data[start] == 'e' && data[start + 1] == '.' && data[start + 2] == 'p') {
+            return;  // "e.p." after an en passant capture
+        }
+
+        int move = San.parse(board, data, start, end);
+        if (move == Move.NONE) {
+            throw new IllegalArgumentException("illegal move " + new String(data, start, end - start, StandardCharsets.ISO_8859_1)
+                    + " after " + game.getMoveCount() + " plies");
+        }
+        board.makeMove(move);
+        game.addMove(move);
+    }
+
+    /**
+     * @return The result a token stands for, or null if it is not a result.
+     */
+    private static String resultToken(byte[] data, int start, int end) {
+        int length = end - start;
+        if (length == 1 && data[start] == '*') {
+            return PgnGame.UNKNOWN;
+        }
+        if (length == 3 && data[start + 1] == '-') {
+            if (data[start] == '1' && data[start + 2] == '0') {
+                return PgnGame.WHITE_WINS;
+            }
+            if (data[start] == '0' && data[start + 2] == '1') {
+                return PgnGame.BLACK_WINS;
+            }
+        }
+        if (length == 7 && data[start] == '1' && data[start + 1] == '/' && data[start + 2] == '2') {
+            return PgnGame.DRAW;
+        }
+        return null;
+    }
+
+    /**
+     * Reads a PGN file as fast as possible and prints the number of games, moves and
+     * errors and the time taken. With a second file name the games are written back out
+     * with PgnWriter.
+     *
+     * @param args <pgn file> [pgn output file]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: PgnReader <pgn file> [pgn output file]");
+            return;
+        }
+        long start = System.nanoTime();
+        long games = 0;
+        long plies = 0;
+        try (PgnReader reader = new PgnReader(Path.of(args[0]));
+             PgnWriter writer = args.length > 1 ? new PgnWriter(Path.of(args[1])) : null) {
+            PgnGame game;
+            while ((game = reader.nextGame()) != null) {
+                games++;
+                plies += game.getMoveCount();
+                if (writer != null) {
+                    writer.write(game);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d games, %d moves, %d skipped, %.1f MB in %.2f s (%.0f games/min)%n", games, plies,
+                    reader.getErrorCount(), reader.getBytesRead() / 1e6, seconds, seconds > 0 ? games * 60 / seconds : 0.0);
+        }
+    }
+}
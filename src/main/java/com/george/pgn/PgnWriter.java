@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: PgnWriter
+ *
+ * This class writes games in PGN (Portable Game Notation) to a character stream, one
+ * game at a time, so any number of games can be written without keeping them in memory.
+ * Moves are written in SAN (see San) with move numbers, and lines are wrapped before
+ * 80 characters as the PGN export format asks.
+ */
+
+package com.george.pgn;
+
+import com.george.board.ChessBoard;
+import com.george.board.San;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+public class PgnWriter implements Closeable, Flushable {
+
+    // Longest line written in the movetext
+    private static final int LINE_LENGTH = 79;
+
+    // Buffer size for files opened by the writer
+    private static final int BUFFER_CHARS = 1 << 20;
+
+    private final Writer out;
+
+    // Reused for each game, so that writing does not create a board per game
+    private final ChessBoard board = new ChessBoard();
+
+    // Reused for each game's movetext
+    private final StringBuilder line = new StringBuilder(128);
+    private final StringBuilder token = new StringBuilder(16);
+
+    /**
+     * Creates a writer over a character stream. The stream should be buffered.
+     *
+     * @param out The stream to write to.
+     */
+    public PgnWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Creates a writer that writes a new file, replacing any file of that name.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be created.
+     */
+    public PgnWriter(Path file) throws IOException {
+        this(new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), BUFFER_CHARS));
+    }
+
+    /**
+     * Writes one game: its tag pairs, a blank line, its movetext ending with the result,
+     * and another blank line.
+     *
+     * @param game The game to write.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void write(PgnGame game) throws IOException {
+        for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+            writeTag(tag.getKey(), tag.getValue());
+        }
+        if (game.getStartFen() != null && game.getTag("FEN") == null) {
+            writeTag("SetUp", "1");
+            writeTag("FEN", game.getStartFen());
+        }
+        out.write('\n');
+
+        board.setFen(game.getStartFen() == null ? ChessBoard.START_FEN : game.getStartFen());
+        int number = board.getFullmoveNumber();
+        boolean white = board.currentPlayer() == ChessBoard.Player.WHITE;
+        line.setLength(0);
+        for (int i = 0; i < game.getMoveCount(); i++) {
+            int move = game.getMove(i);
+            token.setLength(0);
+            if (white) {
+                token.append(number).append(". ");
+            } else if (i == 0) {
+                token.append(number).append("... ");
+            }
+            San.append(board, move, token);
+            addToken();
+
+            board.makeMove(move);
+            if (!white) {
+                number++;
+            }
+            white = !white;
+        }
+        token.setLength(0);
+        token.append(game.getResult());
+        addToken();
+        out.append(line).append('\n').append('\n');
+    }
+
+    /**
+     * Adds the current token to the line, starting a new line if it would not fit.
+     */
+    private void addToken() throws IOException {
+        if (line.length() > 0 && line.length() + 1 + token.length() > LINE_LENGTH) {
+            out.append(line).append('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(token);
+    }
+
+    private void writeTag(String name, String value) throws IOException {
+        out.write('[');
+        out.write(name);
+        out.write(" \"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');  // Quotes and backslashes are escaped in tag values
+            }
+            out.write(c);
+        }
+        out.write("\"]\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
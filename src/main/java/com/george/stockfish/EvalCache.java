@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: EvalCache
+ *
+ * This class sits in front of a StockfishConnector and remembers what the engine said
+ * about positions it has already searched, so asking again costs no engine time. An
+ * entry is keyed by the Zobrist key of the position together with the search limits,
+ * and holds the best move, score, depth and node count.
+ *
+ * There are two tiers:
+ * - An in-memory LRU map of the most recently used results.
+ * - A memory-mapped file of fixed-size slots that survives restarts. It is an open
+ *   addressing hash table; when the slots probed for a key are all taken, the
+ *   shallowest result is replaced.
+ *
+ * Disk slot layout (32 bytes):
+ * - Bytes 0-7:   the cache key (never 0; 0 marks an empty slot).
+ * - Bytes 8-11:  the best move (see Move).
+ * - Bytes 12-15: the score.
+ * - Bytes 16-19: the depth.
+ * - Bytes 20-23: unused.
+ * - Bytes 24-31: the node count.
+ *
+ * Positions are matched by Zobrist key alone, so two move orders reaching the same
+ * position share one entry. A live search also sees the game's history and steers
+ * around repetitions, which a cached move cannot do, so the cache is bypassed when the
+ * position has occurred before, and a cached move that would repeat an earlier position
+ * is not used. Every cached move is also checked to be legal in the position, which
+ * guards against two positions sharing a key in the disk tier. A cached move that
+ * fails either check counts as a miss.
+ */
+package com.george.stockfish;
+
+import com.george.board.ChessBoard;
+import com.george.board.Move;
+import com.george.board.MoveGenerator;
+import com.george.engine.SearchResult;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+public class EvalCache implements AutoCloseable {
+
+    // Default location of the cache file, next to the Stockfish executable
+    public static final String DEFAULT_FILE = "stockfish/eval-cache.bin";
+
+    private static final int MAGIC = 0x45564331;  // "EVC1"
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = 32;
+    private static final int PROBES = 8;
+
+    // A single mapping is limited to 2 GB
+    private static final int MAX_SLOTS = 1 << 25;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer disk;
+    private final int slotMask;
+    private final Map<Long, SearchResult> memory;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Opens the cache file at the default location, creating it if needed.
+     *
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public EvalCache() throws IOException {
+        this(Path.of(DEFAULT_FILE), 4096, 64);
+    }
+
+    /**
+     * Opens a cache file, creating it if needed.
+     *
+     * An existing file keeps the size it was created with; diskMb only applies to new
+     * files.
+     *
+     * @param file The cache file.
+     * @param memoryEntries How many results the in-memory tier keeps.
+     * @param diskMb The size of a new cache file in megabytes (rounded down to a power
+     * of two number of slots).
+     * @throws IOException If the file cannot be opened or mapped, or is not a cache file.
+     */
+    public EvalCache(Path file, int memoryEntries, int diskMb) throws IOException {
+        this.memory = new LinkedHashMap<>(Math.min(memoryEntries, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, SearchResult> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int slots;
+            if (channel.size() >= HEADER_BYTES) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                slots = header.getInt(4);
+                if (header.getInt(0) != MAGIC || Integer.bitCount(slots) != 1 || slots > MAX_SLOTS
+                        || channel.size() < HEADER_BYTES + (long) slots * SLOT_BYTES) {
+                    throw new IOException("Not an evaluation cache file: " + file);
+                }
+            } else {
+                long wanted = Math.max(1L, (long) diskMb) * 1024 * 1024 / SLOT_BYTES;
+                slots = (int) Math.min(Long.highestOneBit(wanted), MAX_SLOTS);
+            }
+
+            disk = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slots * SLOT_BYTES);
+            disk.order(ByteOrder.LITTLE_ENDIAN);
+            disk.putInt(0, MAGIC);
+            disk.putInt(4, slots);
+            slotMask = slots - 1;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Searches a position, answering from the cache when the same position has been
+     * searched with the same limits before.
+     *
+     * @param engine The engine to ask on a cache miss.
+     * @param position The position to search.
+     * @param limits How long to search.
+     * @return A future for the result. Cached results report a search time of 0 and,
+     * when they come from the disk tier, only the best move as the principal variation.
+     */
+    public CompletableFuture<SearchResult> go(StockfishConnector engine, ChessBoard position, SearchLimits limits) {
+        if (position.isRepetition()) {
+            // The answer depends on the history; the engine is given it and nothing is kept
+            misses.increment();
+            return engine.go(position, limits);
+        }
+        long key = key(position, limits);
+        SearchResult cached = lookup(key, position);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return engine.go(position, limits).thenApply(result -> {
+            store(key, result);
+            return result;
+        });
+    }
+
+    /**
+     * Looks up the result of an earlier search.
+     *
+     * @param position The position.
+     * @param limits The limits it was searched with.
+     * @return The cached result, or null if there is none or its move cannot be used
+     * in this game (see the class description).
+     */
+    public SearchResult get(ChessBoard position, SearchLimits limits) {
+        if (position.isRepetition()) {
+            misses.increment();
+            return null;
+        }
+        return lookup(key(position, limits), position);
+    }
+
+    /**
+     * Remembers the result of a search in both tiers.
+     *
+     * @param position The position that was searched.
+     * @param limits The limits it was searched with.
+     * @param result The engine's result.
+     */
+    public void put(ChessBoard position, SearchLimits limits, SearchResult result) {
+        store(key(position, limits), result);
+    }
+
+    private SearchResult lookup(long key, ChessBoard position) {
+        SearchResult result;
+        synchronized (memory) {
+            result = memory.get(key);
+        }
+        if (result != null) {
+            if (!isUsable(result.getBestMove(), position)) {
+                misses.increment();
+                return null;
+            }
+            memoryHits.increment();
+            return result;
+        }
+
+        result = readDisk(key);
+        if (result == null || !isUsable(result.getBestMove(), position)) {
+            misses.increment();
+            return null;
+        }
+        diskHits.increment();
+        synchronized (memory) {
+            memory.put(key, result);  // Promote to the memory tier
+        }
+        return result;
+    }
+
+    /**
+     * Checks that a cached move is legal in the position and does not lead back to a
+     * position that occurred earlier in the game.
+     */
+    private static boolean isUsable(int move, ChessBoard position) {
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        int count = position.generateLegalMoves(legal);
+        for (int i = 0; i < count; i++) {
+            if (legal[i] == move) {
+                // Played on a copy, since the caller's board may have listeners
+                ChessBoard next = new ChessBoard(position);
+                next.makeMove(move);
+                return !next.isRepetition();
+            }
+        }
+        return false;
+    }
+
+    private void store(long key, SearchResult result) {
+        if (result.getBestMove() == Move.NONE) {
+            return;  // Nothing worth remembering; the position is over
+        }
+        stores.increment();
+        synchronized (memory) {
+            memory.put(key, result);
+        }
+        writeDisk(key, result);
+    }
+
+    private synchronized SearchResult readDisk(long key) {
+        int index = (int) key & slotMask;
+        for (int i = 0; i < PROBES; i++) {
+            int offset = slotOffset((index + i) & slotMask);
+            long stored = disk.getLong(offset);
+            if (stored == 0) {
+                return null;  // Slots fill in probe order, so the key is not further on
+            }
+            if (stored == key) {
+                int move = disk.getInt(offset + 8);
+                return new SearchResult(move, disk.getInt(offset + 12), disk.getInt(offset + 16),
+                        disk.getLong(offset + 24), 0, new int[]{move});
+            }
+        }
+        return null;
+    }
+
+    private synchronized void writeDisk(long key, SearchResult result) {
+        int index = (int) key & slotMask;
+        int victim = -1;
+        int victimDepth = Integer.MAX_VALUE;
+        for (int i = 0; i < PROBES; i++) {
+            int offset = slotOffset((index + i) & slotMask);
+            long stored = disk.getLong(offset);
+            if (stored == 0 || stored == key) {
+                victim = offset;
+                break;
+            }
+            int depth = disk.getInt(offset + 16);
+            if (depth < victimDepth) {
+                victim = offset;
+                victimDepth = depth;
+            }
+        }
+
+        disk.putInt(victim + 8, result.getBestMove());
+        disk.putInt(victim + 12, result.getScore());
+        disk.putInt(victim + 16, result.getDepth());
+        disk.putLong(victim + 24, result.getNodes());
+        disk.putLong(victim, key);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    /**
+     * Combines the position's Zobrist key with the limits into the cache key.
+     */
+    private static long key(ChessBoard position, SearchLimits limits) {
+        long h = limits.getMoveTimeMillis() * 0x9E3779B97F4A7C15L;
+        h = (h ^ limits.getDepth()) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ limits.getNodes()) * 0x94D049BB133111EBL;
+        long key = position.getZobristKey() ^ (h ^ (h >>> 31));
+        return key == 0 ? 1 : key;  // 0 marks an empty slot
+    }
+
+    /**
+     * @return How many lookups were answered from memory.
+     */
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    /**
+     * @return How many lookups were answered from the disk file.
+     */
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    /**
+     * @return How many lookups found nothing.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return How many results have been stored.
+     */
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * @return The fraction of lookups answered from either tier, between 0 and 1.
+     */
+    public double getHitRate() {
+        long hits = getMemoryHits() + getDiskHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * @return The number of slots in the disk file.
+     */
+    public int getDiskSlots() {
+        return slotMask + 1;
+    }
+
+    /**
+     * Writes any changes of the disk tier to the file.
+     */
+    public synchronized void flush() {
+        disk.force();
+    }
+
+    /**
+     * Flushes the disk tier and closes the file.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EvalCache[memory hits %d, disk hits %d, misses %d, hit rate %.1f%%]",
+                getMemoryHits(), getDiskHits(), getMisses(), 100.0 * getHitRate());
+    }
+}
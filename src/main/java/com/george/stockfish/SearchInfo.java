@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: SearchInfo
+ *
+ * This class holds the contents of one UCI "info" line printed by Stockfish while it
+ * searches: depth, selective depth, score (centipawns or mate), bound, nodes, speed,
+ * hash usage, tablebase hits and the principal variation as packed moves.
+ *
+ * Lines are parsed in place, character by character, into a reusable instance, so
+ * reading an engine's output does not split strings or create objects per line.
+ * Listeners that want to keep an event must copy it with copy().
+ */
+
+package com.george.stockfish;
+
+import com.george.board.ChessBoard;
+import com.george.board.Move;
+import com.george.engine.Search;
+
+import java.util.Arrays;
+
+public final class SearchInfo {
+
+    // Value used for fields that the line did not contain
+    public static final int NOT_SET = -1;
+
+    // Longest principal variation kept
+    public static final int MAX_PV = 128;
+
+    private int depth;
+    private int selDepth;
+    private int multiPv;
+    private int scoreCp;
+    private int mateIn;
+    private boolean scored;
+    private boolean mate;
+    private boolean lowerBound;
+    private boolean upperBound;
+    private long nodes;
+    private long nps;
+    private int hashFull;
+    private long tbHits;
+    private long timeMillis;
+    private final int[] pv = new int[MAX_PV];
+    private int pvLength;
+
+    /**
+     * Creates an empty event.
+     */
+    public SearchInfo() {
+        reset();
+    }
+
+    /**
+     * Clears every field to NOT_SET.
+     */
+    public void reset() {
+        depth = NOT_SET;
+        selDepth = NOT_SET;
+        multiPv = NOT_SET;
+        scoreCp = 0;
+        mateIn = 0;
+        scored = false;
+        mate = false;
+        lowerBound = false;
+        upperBound = false;
+        nodes = NOT_SET;
+        nps = NOT_SET;
+        hashFull = NOT_SET;
+        tbHits = NOT_SET;
+        timeMillis = NOT_SET;
+        pvLength = 0;
+    }
+
+    /**
+     * Parses a UCI "info" line into this event, replacing its previous contents.
+     *
+     * Principal variation moves are decoded against the given position: each move is
+     * played on the board to decode the next one, and all of them are taken back before
+     * returning, so the board ends up unchanged. Decoding stops at the first move that
+     * is not legal.
+     *
+     * @param line The line printed by the engine.
+     * @param position The position being searched.
+     * @return true if the line is an "info" line with search data, false for any other
+     * line (including "info string").
+     */
+    public boolean parse(CharSequence line, ChessBoard position) {
+        reset();
+        int length = line.length();
+        int pos = skipSpaces(line, 0);
+        int end = tokenEnd(line, pos);
+        if (!matches(line, pos, end, "info")) {
+            return false;
+        }
+
+        pos = skipSpaces(line, end);
+        while (pos < length) {
+            end = tokenEnd(line, pos);
+
+            if (matches(line, pos, end, "string")) {
+                return depth != NOT_SET;  // The rest of the line is free text
+            } else if (matches(line, pos, end, "pv")) {
+                pos = parsePv(line, skipSpaces(line, end), position);
+                continue;
+            } else if (matches(line, pos, end, "lowerbound")) {
+                lowerBound = true;
+            } else if (matches(line, pos, end, "upperbound")) {
+                upperBound = true;
+            } else if (matches(line, pos, end, "score")) {
+                pos = skipSpaces(line, end);
+                end = tokenEnd(line, pos);
+                scored = true;
+                mate = matches(line, pos, end, "mate");
+                pos = skipSpaces(line, end);
+                end = tokenEnd(line, pos);
+                if (mate) {
+                    mateIn = (int) parseNumber(line, pos, end);
+                } else {
+                    scoreCp = (int) parseNumber(line, pos, end);
+                }
+            } else {
+                // Every other field we keep is "name value"
+                int valueStart = skipSpaces(line, end);
+                int valueEnd = tokenEnd(line, valueStart);
+                long value = parseNumber(line, valueStart, valueEnd);
+                if (matches(line, pos, end, "depth")) {
+                    depth = (int) value;
+                } else if (matches(line, pos, end, "seldepth")) {
+                    selDepth = (int) value;
+                } else if (matches(line, pos, end, "multipv")) {
+                    multiPv = (int) value;
+                } else if (matches(line, pos, end, "nodes")) {
+                    nodes = value;
+                } else if (matches(line, pos, end, "nps")) {
+                    nps = value;
+                } else if (matches(line, pos, end, "hashfull")) {
+                    hashFull = (int) value;
+                } else if (matches(line, pos, end, "tbhits")) {
+                    tbHits = value;
+                } else if (matches(line, pos, end, "time")) {
+                    timeMillis = value;
+                } else {
+                    valueEnd = end;  // Unknown or ignored keyword (e.g., currmove); skip it alone
+                }
+                end = valueEnd;
+            }
+            pos = skipSpaces(line, end);
+        }
+        return depth != NOT_SET || pvLength > 0;
+    }
+
+    /**
+     * Decodes the moves of a principal variation, playing each on the board and taking
+     * them all back afterwards.
+     *
+     * @return The index just past the last move that was read.
+     */
+    private int parsePv(CharSequence line, int pos, ChessBoard position) {
+        int length = line.length();
+        while (pos < length && pvLength < MAX_PV) {
+            int end = tokenEnd(line, pos);
+            int move = position.parseUciMove(line, pos, end);
+            if (move == Move.NONE) {
+                break;
+            }
+            pv[pvLength++] = move;
+            position.makeMove(move);
+            pos = skipSpaces(line, end);
+        }
+        for (int i = 0; i < pvLength; i++) {
+            position.unmakeMove();
+        }
+        // Skip any moves that could not be decoded
+        while (pos < length && isMoveLike(line, pos)) {
+            pos = skipSpaces(line, tokenEnd(line, pos));
+        }
+        return pos;
+    }
+
+    /**
+     * @return true if the token at pos has the shape of a UCI move (e.g., e2e4, a7a8q).
+     */
+    private static boolean isMoveLike(CharSequence line, int pos) {
+        int end = tokenEnd(line, pos);
+        return end - pos >= 4 && end - pos <= 5 && Character.isDigit(line.charAt(pos + 1));
+    }
+
+    private static int skipSpaces(CharSequence line, int pos) {
+        while (pos < line.length() && line.charAt(pos) == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int tokenEnd(CharSequence line, int pos) {
+        while (pos < line.length() && line.charAt(pos) != ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean matches(CharSequence line, int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (line.charAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseNumber(CharSequence line, int start, int end) {
+        boolean negative = start < end && line.charAt(start) == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_SET;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Copies another event into this one.
+     *
+     * @param other The event to copy.
+     */
+    public void copyFrom(SearchInfo other) {
+        depth = other.depth;
+        selDepth = other.selDepth;
+        multiPv = other.multiPv;
+        scoreCp = other.scoreCp;
+        mateIn = other.mateIn;
+        scored = other.scored;
+        mate = other.mate;
+        lowerBound = other.lowerBound;
+        upperBound = other.upperBound;
+        nodes = other.nodes;
+        nps = other.nps;
+        hashFull = other.hashFull;
+        tbHits = other.tbHits;
+        timeMillis = other.timeMillis;
+        System.arraycopy(other.pv, 0, pv, 0, other.pvLength);
+        pvLength = other.pvLength;
+    }
+
+    /**
+     * @return A new event holding the same values, for listeners that keep events.
+     */
+    public SearchInfo copy() {
+        SearchInfo copy = new SearchInfo();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * @return The search depth, or NOT_SET.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return The selective search depth, or NOT_SET.
+     */
+    public int getSelDepth() {
+        return selDepth;
+    }
+
+    /**
+     * @return The number of the line when several are searched (multipv), or NOT_SET.
+     */
+    public int getMultiPv() {
+        return multiPv;
+    }
+
+    /**
+     * @return true if the line carried a score.
+     */
+    public boolean hasScore() {
+        return scored;
+    }
+
+    /**
+     * @return true if the score is a mate announcement.
+     */
+    public boolean isMate() {
+        return mate;
+    }
+
+    /**
+     * @return The score in centipawns from the engine's side to move (0 for mate scores).
+     */
+    public int getScoreCp() {
+        return scoreCp;
+    }
+
+    /**
+     * @return Moves until mate; negative if the side to move is getting mated.
+     */
+    public int getMateIn() {
+        return mateIn;
+    }
+
+    /**
+     * Returns the score on the same scale as the native engine's SearchResult, where a
+     * mate in N plies scores Search.MATE - N.
+     *
+     * @return The score in centipawns, or a mate score.
+     */
+    public int getScore() {
+        if (!mate) {
+            return scoreCp;
+        }
+        return mateIn > 0 ? Search.MATE - (2 * mateIn - 1) : -(Search.MATE - 2 * -mateIn);
+    }
+
+    /**
+     * @return true if the score is only a lower bound (the search failed high).
+     */
+    public boolean isLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * @return true if the score is only an upper bound (the search failed low).
+     */
+    public boolean isUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * @return The number of nodes searched, or NOT_SET.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return The nodes searched per second, or NOT_SET.
+     */
+    public long getNps() {
+        return nps;
+    }
+
+    /**
+     * @return The hash table fill in parts per thousand, or NOT_SET.
+     */
+    public int getHashFull() {
+        return hashFull;
+    }
+
+    /**
+     * @return The number of tablebase hits, or NOT_SET.
+     */
+    public long getTbHits() {
+        return tbHits;
+    }
+
+    /**
+     * @return The time searched in milliseconds, or NOT_SET.
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * @return The number of moves in the principal variation.
+     */
+    public int getPvLength() {
+        return pvLength;
+    }
+
+    /**
+     * @param index The position in the principal variation (0 is the first move).
+     * @return The packed move (see Move).
+     */
+    public int getPvMove(int index) {
+        return pv[index];
+    }
+
+    /**
+     * @return A copy of the principal variation as packed moves.
+     */
+    public int[] getPv() {
+        return Arrays.copyOf(pv, pvLength);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("info depth ").append(depth).append(" seldepth ").append(selDepth);
+        if (mate) {
+            sb.append(" score mate ").append(mateIn);
+        } else {
+            sb.append(" score cp ").append(scoreCp);
+        }
+        if (lowerBound) {
+            sb.append(" lowerbound");
+        }
+        if (upperBound) {
+            sb.append(" upperbound");
+        }
+        sb.append(" nodes ").append(nodes).append(" nps ").append(nps).append(" hashfull ").append(hashFull)
+                .append(" tbhits ").append(tbHits).append(" time ").append(timeMillis).append(" pv");
+        for (int i = 0; i < pvLength; i++) {
+            Move.appendUci(pv[i], sb.append(' '));
+        }
+        return sb.toString();
+    }
+}
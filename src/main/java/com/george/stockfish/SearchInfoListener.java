@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Interface: SearchInfoListener
+ *
+ * Receives the progress of a Stockfish search, one event per "info" line. Listeners are
+ * called on the connector's reader thread and are handed a reused SearchInfo, so they
+ * should return quickly and call copy() on any event they want to keep.
+ */
+package com.george.stockfish;
+
+@FunctionalInterface
+public interface SearchInfoListener {
+
+    /**
+     * Called for every "info" line of a running search.
+     *
+     * @param info The parsed line; only valid until this method returns.
+     */
+    void onInfo(SearchInfo info);
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: SearchLimits
+ *
+ * This class describes how long an engine should search, and turns that into a UCI
+ * "go" command. Any combination of move time, depth and node count can be given; a
+ * limit of 0 means "not set".
+ */
+
+package com.george.stockfish;
+
+public final class SearchLimits {
+
+    private final long moveTimeMillis;
+    private final int depth;
+    private final long nodes;
+
+    /**
+     * Creates a set of limits. Use 0 for any limit that should not apply.
+     *
+     * @param moveTimeMillis The time to search in milliseconds.
+     * @param depth The depth to search to.
+     * @param nodes The number of nodes to search.
+     */
+    public SearchLimits(long moveTimeMillis, int depth, long nodes) {
+        this.moveTimeMillis = moveTimeMillis;
+        this.depth = depth;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @param moveTimeMillis The time to search in milliseconds.
+     * @return Limits equivalent to "go movetime N".
+     */
+    public static SearchLimits moveTime(long moveTimeMillis) {
+        return new SearchLimits(moveTimeMillis, 0, 0);
+    }
+
+    /**
+     * @param depth The depth to search to.
+     * @return Limits equivalent to "go depth N".
+     */
+    public static SearchLimits depth(int depth) {
+        return new SearchLimits(0, depth, 0);
+    }
+
+    /**
+     * @param nodes The number of nodes to search.
+     * @return Limits equivalent to "go nodes N".
+     */
+    public static SearchLimits nodes(long nodes) {
+        return new SearchLimits(0, 0, nodes);
+    }
+
+    /**
+     * Reads limits from text such as "movetime=100", "depth=12" or
+     * "movetime=500,nodes=200000". A plain number is a move time in milliseconds.
+     *
+     * @param spec The limits, as comma separated name=value pairs.
+     * @return The limits.
+     * @throws IllegalArgumentException If the text cannot be read.
+     */
+    public static SearchLimits parse(String spec) {
+        long moveTime = 0;
+        int depth = 0;
+        long nodes = 0;
+        for (String part : spec.split(",")) {
+            int eq = part.indexOf('=');
+            String name = eq < 0 ? "movetime" : part.substring(0, eq).trim();
+            String value = part.substring(eq + 1).trim();
+            try {
+                switch (name) {
+                    case "movetime" -> moveTime = Long.parseLong(value);
+                    case "depth" -> depth = Integer.parseInt(value);
+                    case "nodes" -> nodes = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Unknown search limit: " + name);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad value for " + name + ": " + value);
+            }
+        }
+        if (moveTime <= 0 && depth <= 0 && nodes <= 0) {
+            throw new IllegalArgumentException("No search limit in: " + spec);
+        }
+        return new SearchLimits(moveTime, depth, nodes);
+    }
+
+    /**
+     * @return The time to search in milliseconds, or 0 if not set.
+     */
+    public long getMoveTimeMillis() {
+        return moveTimeMillis;
+    }
+
+    /**
+     * @return The depth to search to, or 0 if not set.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return The number of nodes to search, or 0 if not set.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Appends the UCI "go" command for these limits. With no limits set this is a plain
+     * "go", which searches until told to stop.
+     *
+     * @param out The builder to append to.
+     * @return The same builder, for chaining.
+     */
+    public StringBuilder appendGoCommand(StringBuilder out) {
+        out.append("go");
+        if (moveTimeMillis > 0) {
+            out.append(" movetime ").append(moveTimeMillis);
+        }
+        if (depth > 0) {
+            out.append(" depth ").append(depth);
+        }
+        if (nodes > 0) {
+            out.append(" nodes ").append(nodes);
+        }
+        return out;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof SearchLimits)) {
+            return false;
+        }
+        SearchLimits limits = (SearchLimits) other;
+        return moveTimeMillis == limits.moveTimeMillis && depth == limits.depth && nodes == limits.nodes;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(moveTimeMillis * 31 + depth) * 31 + Long.hashCode(nodes);
+    }
+
+    /**
+     * @return The limits in the form read by parse(), e.g. "movetime=100,depth=12".
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (moveTimeMillis > 0) {
+            sb.append("movetime=").append(moveTimeMillis);
+        }
+        if (depth > 0) {
+            sb.append(sb.length() > 0 ? "," : "").append("depth=").append(depth);
+        }
+        if (nodes > 0) {
+            sb.append(sb.length() > 0 ? "," : "").append("nodes=").append(nodes);
+        }
+        return sb.toString();
+    }
+}
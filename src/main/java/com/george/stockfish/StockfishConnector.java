@@ -32,17 +32,80 @@
  * - Starting and stopping the Stockfish engine.
  * - Sending UCI (Universal Chess Interface) commands to the engine.
  * - Receiving responses and best move suggestions from Stockfish.
+ * - Asking for searches without blocking, through CompletableFuture results.
+ *
+ * A single reader thread per process reads every line Stockfish prints. Lines that
+ * belong to a search started with go() are routed to that search; every other line is
+ * queued for the blocking getResponse() and getBestMove() calls. Searches started with
+ * go() are queued and sent to the engine one at a time.
+ *
+ * The "info" lines of a search started with go() are parsed into SearchInfo events as
+ * they arrive and passed to the search's own listener and to every listener added with
+ * addInfoListener(). The last full line also fills in the score, depth, node count and
+ * principal variation of the SearchResult.
+ *
+ * The connector remembers the position it last sent. Positions are sent as the FEN of
+ * the last capture or pawn move followed by the moves played since, which keeps the
+ * command short (at most 100 moves) while still letting Stockfish see repetitions, and
+ * nothing is sent when the engine already has the position. The engine's hash is kept
+ * from one move to the next until newGame() is called.
  */
 package com.george.stockfish;
 
+import com.george.board.ChessBoard;
+import com.george.board.Move;
+import com.george.engine.SearchResult;
+
 import java.io.*;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class StockfishConnector {
 
+    // Location of the Stockfish executable used when no other path is given
+    public static final String DEFAULT_PATH = "stockfish/stockfish-windows-x86-64-avx2";
+
+    // Marks the end of the engine's output in the line queue
+    private static final String END_OF_OUTPUT = new String("end of output");
+
+    private final String pathToStockfish;
     private Process stockfish;
     private BufferedReader input;
     private BufferedWriter output;
 
+    // Lines not claimed by an asynchronous search, read by getResponse and getBestMove
+    private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+    // Searches started with go(); the head has been sent to the engine, the rest wait
+    private final ArrayDeque<PendingSearch> searches = new ArrayDeque<>();
+
+    // Listeners told about the progress of every search started with go()
+    private final List<SearchInfoListener> infoListeners = new CopyOnWriteArrayList<>();
+
+    // The "position" command the engine was last given, or null if unknown; guarded by output
+    private String lastPosition;
+
+    /**
+     * Creates a connector for the Stockfish executable at the default path.
+     */
+    public StockfishConnector() {
+        this(DEFAULT_PATH);
+    }
+
+    /**
+     * Creates a connector for a Stockfish executable at the given path.
+     *
+     * @param pathToStockfish The path to the engine executable.
+     */
+    public StockfishConnector(String pathToStockfish) {
+        this.pathToStockfish = pathToStockfish;
+    }
+
     /**
      * Starts the Stockfish chess engine by launching a process for the engine
      * executable.
@@ -55,11 +118,14 @@ public class StockfishConnector {
      */
     public boolean startEngine() {
         try {
-            // Provide the relative path to the Stockfish executable
-            String pathToStockfish = "stockfish/stockfish-windows-x86-64-avx2";
             stockfish = new ProcessBuilder(pathToStockfish).start();
             input = new BufferedReader(new InputStreamReader(stockfish.getInputStream()));
             output = new BufferedWriter(new OutputStreamWriter(stockfish.getOutputStream()));
+            lines.clear();
+
+            Thread reader = new Thread(this::readOutput, "stockfish-reader");
+            reader.setDaemon(true);  // Never keep the application alive
+            reader.start();
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -78,8 +144,97 @@ public class StockfishConnector {
      * @throws IOException If an error occurs while writing to Stockfish.
      */
     public void sendCommand(String command) throws IOException {
-        output.write(command + "\n");
-        output.flush();  // Ensure the command is sent immediately
+        synchronized (output) {
+            if (command.startsWith("position") || command.startsWith("ucinewgame")) {
+                lastPosition = null;  // The engine's position is no longer the one we sent
+            }
+            output.write(command);
+            output.write('\n');
+            output.flush();  // Ensure the command is sent immediately
+        }
+    }
+
+    /**
+     * Sets up a position on the engine, sending nothing if it already has it.
+     *
+     * Use this instead of sending "position startpos moves ..." with the whole game:
+     * the command sent only holds the moves since the last capture or pawn move.
+     *
+     * @param position The position, with the moves that led to it on its undo stack.
+     * @throws IOException If an error occurs while writing to Stockfish.
+     */
+    public void setPosition(ChessBoard position) throws IOException {
+        StringBuilder command = new StringBuilder(128);
+        appendPosition(new ChessBoard(position), command);
+        sendPosition(command.toString(), null);
+    }
+
+    /**
+     * Tells the engine that the next position belongs to a new game, clearing its hash,
+     * and waits until it is ready.
+     *
+     * Only call this between games: within a game the hash filled while searching one
+     * move speeds up the search of the next.
+     *
+     * @throws IOException If an error occurs while talking to Stockfish.
+     */
+    public void newGame() throws IOException {
+        sendCommand("ucinewgame");
+        sendCommand("isready");
+        getResponse();  // Wait for "readyok"
+    }
+
+    /**
+     * Appends the shortest "position" command that recreates the position together with
+     * the moves that matter for repetitions: the FEN of the position after the last
+     * capture or pawn move, followed by the moves played since.
+     *
+     * The board's moves are taken back to read the FEN and then played again, so the
+     * board must not be in use by another thread.
+     */
+    private static void appendPosition(ChessBoard position, StringBuilder command) {
+        int count = Math.min(position.getHalfmoveClock(), position.getUndoDepth());
+        for (int i = 1; i <= count; i++) {
+            if (position.getUndoMove(i) == Move.NONE) {
+                count = i - 1;  // A null move cannot be sent; start after it
+                break;
+            }
+        }
+
+        int[] moves = new int[count];
+        for (int i = 0; i < count; i++) {
+            moves[i] = position.getUndoMove(count - i);  // Oldest first
+        }
+        for (int i = 0; i < count; i++) {
+            position.unmakeMove();
+        }
+        command.append("position fen ").append(position.toFen());
+        if (count > 0) {
+            command.append(" moves");
+            for (int m : moves) {
+                Move.appendUci(m, command.append(' '));
+                position.makeMove(m);
+            }
+        }
+    }
+
+    /**
+     * Sends a "position" command unless the engine already has that position, then the
+     * go command if one is given.
+     */
+    private void sendPosition(String positionCommand, String goCommand) throws IOException {
+        synchronized (output) {
+            if (!positionCommand.equals(lastPosition)) {
+                output.write(positionCommand);
+                output.write('\n');
+                lastPosition = positionCommand;
+            }
+            if (goCommand != null) {
+                output.write(goCommand);
+                output.write('\n');
+            }
+            output.flush();
+        }
     }
 
     /**
@@ -96,7 +251,7 @@ public class StockfishConnector {
         StringBuilder sb = new StringBuilder();
         String line;
         // Read all output from Stockfish until we get an indication that the command is complete
-        while ((line = input.readLine()) != null) {
+        while ((line = nextLine()) != null) {
             sb.append(line).append("\n");
             // End the response based on specific keywords
             if (line.equals("uciok") || line.startsWith("bestmove") || line.equals("readyok")) {
@@ -118,23 +273,264 @@ public class StockfishConnector {
      * @throws IOException If an error occurs while reading from Stockfish.
      */
     public String getBestMove() throws IOException {
-        String bestMove = null;
-        StringBuilder sb = new StringBuilder();
         String line;
 
-        // Read the output from Stockfish and look for the "bestmove" line
-        while ((line = input.readLine()) != null) {
-            sb.append(line).append("\n");
-
-            // If the output contains "bestmove", extract the move
+        // Skip the search's progress lines until the "bestmove" line arrives
+        while ((line = nextLine()) != null) {
             if (line.startsWith("bestmove")) {
-                String[] parts = line.split(" ");  // Split the line by spaces
-                bestMove = parts[1];  // The best move is the second element (e.g., e2e4)
-                break;  // Stop once the best move is found
+                return moveToken(line);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends "isready" and waits for the engine's "readyok", skipping any output that
+     * comes before it, such as the end of an abandoned search.
+     *
+     * @param timeout How long to wait.
+     * @param unit The unit of the timeout.
+     * @return true if the engine answered in time, false if it did not or its output
+     * has ended.
+     * @throws IOException If the command cannot be sent or the thread is interrupted.
+     */
+    public boolean waitUntilReady(long timeout, TimeUnit unit) throws IOException {
+        sendCommand("isready");
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                String line = remaining > 0 ? lines.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (line == null) {
+                    return false;  // Timed out
+                }
+                if (line == END_OF_OUTPUT) {
+                    lines.add(END_OF_OUTPUT);  // Let later calls see the end as well
+                    return false;
+                }
+                if (line.equals("readyok")) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Stockfish");
+        }
+    }
+
+    /**
+     * Extracts the move from a "bestmove e2e4 [ponder e7e5]" line.
+     */
+    private static String moveToken(String line) {
+        int start = line.indexOf(' ') + 1;
+        if (start == 0) {
+            return "";
+        }
+        int end = line.indexOf(' ', start);
+        return line.substring(start, end < 0 ? line.length() : end);
+    }
+
+    /**
+     * Takes the next line not claimed by an asynchronous search, waiting for one.
+     *
+     * @return The line, or null once the engine's output has ended.
+     * @throws IOException If the thread is interrupted while waiting.
+     */
+    private String nextLine() throws IOException {
+        try {
+            String line = lines.take();
+            if (line == END_OF_OUTPUT) {
+                lines.add(END_OF_OUTPUT);  // Let later calls see the end as well
+                return null;
             }
+            return line;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Stockfish");
         }
+    }
+
+    /**
+     * Starts a search without blocking the calling thread.
+     *
+     * The position is sent (see setPosition), followed by a "go" command for the limits. If the
+     * engine is busy with an earlier search, this one is queued and sent once the
+     * earlier one has finished. The returned future completes on the reader thread
+     * when Stockfish prints its "bestmove" line.
+     *
+     * @param position The position to search; it is copied, so the caller may keep
+     * playing on it.
+     * @param limits How long to search.
+     * @return A future for the result. Its best move is a packed move (see Move), or
+     * Move.NONE if the position has no legal moves. The future fails with an
+     * IOException if the engine cannot be reached.
+     */
+    public CompletableFuture<SearchResult> go(ChessBoard position, SearchLimits limits) {
+        return go(position, limits, null);
+    }
 
-        return bestMove;
+    /**
+     * Starts a search without blocking the calling thread, reporting its progress.
+     *
+     * Works like go(position, limits), and also passes every "info" line of this search
+     * to the given listener, on the reader thread, before the future completes.
+     *
+     * @param position The position to search; it is copied.
+     * @param limits How long to search.
+     * @param listener Told about each "info" line of this search, or null.
+     * @return A future for the result.
+     */
+    public CompletableFuture<SearchResult> go(ChessBoard position, SearchLimits limits, SearchInfoListener listener) {
+        PendingSearch search = new PendingSearch(new ChessBoard(position), limits, listener);
+        boolean sendNow;
+        synchronized (searches) {
+            sendNow = searches.isEmpty();
+            searches.add(search);
+        }
+        if (sendNow) {
+            send(search);
+        }
+        return search.future;
+    }
+
+    /**
+     * Sends the commands for a queued search to the engine.
+     */
+    private void send(PendingSearch search) {
+        StringBuilder command = new StringBuilder(128);
+        appendPosition(search.position, command);
+        String positionCommand = command.toString();
+        command.setLength(0);
+        search.limits.appendGoCommand(command);
+        try {
+            search.startNanos = System.nanoTime();
+            sendPosition(positionCommand, command.toString());
+        } catch (IOException e) {
+            search.future.completeExceptionally(e);
+            finish(search);
+        }
+    }
+
+    /**
+     * Reads the engine's output until it ends, routing each line to the search it
+     * belongs to or to the queue of unclaimed lines. Runs on the reader thread.
+     */
+    private void readOutput() {
+        BufferedReader reader = input;
+        SearchInfo info = new SearchInfo();  // Reused for every line
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                PendingSearch current;
+                synchronized (searches) {
+                    current = searches.peek();
+                }
+
+                if (current == null) {
+                    lines.add(line);
+                } else if (line.startsWith("bestmove")) {
+                    completeSearch(current, line);
+                } else if (line.startsWith("info")) {
+                    if (info.parse(line, current.position)) {
+                        report(current, info);
+                    }
+                } else {
+                    lines.add(line);
+                }
+            }
+        } catch (IOException e) {
+            // The process was stopped; fall through and fail anything still waiting
+        }
+
+        lines.add(END_OF_OUTPUT);
+        IOException closed = new IOException("Stockfish output has ended");
+        PendingSearch search;
+        while ((search = pollSearch()) != null) {
+            search.future.completeExceptionally(closed);
+        }
+    }
+
+    /**
+     * Keeps the latest main line of the running search and passes the event on to the
+     * listeners.
+     */
+    private void report(PendingSearch search, SearchInfo info) {
+        if (info.getMultiPv() <= 1 && info.getPvLength() > 0) {
+            search.best.copyFrom(info);
+        }
+        if (search.listener != null) {
+            search.listener.onInfo(info);
+        }
+        for (SearchInfoListener listener : infoListeners) {
+            listener.onInfo(info);
+        }
+    }
+
+    /**
+     * Completes the running search from its "bestmove" line and sends the next one.
+     */
+    private void completeSearch(PendingSearch search, String line) {
+        int bestMove = search.position.parseUciMove(moveToken(line));
+        long elapsed = (System.nanoTime() - search.startNanos) / 1_000_000L;
+
+        SearchInfo best = search.best;
+        int[] pv;
+        if (best.getPvLength() > 0 && best.getPvMove(0) == bestMove) {
+            pv = best.getPv();
+        } else {
+            pv = bestMove == Move.NONE ? new int[0] : new int[]{bestMove};
+        }
+        int depth = Math.max(best.getDepth(), 0);
+        long nodes = Math.max(best.getNodes(), 0);
+        search.future.complete(new SearchResult(bestMove, best.getScore(), depth, nodes, elapsed, pv));
+        finish(search);
+    }
+
+    /**
+     * Adds a listener that is told about the progress of every search started with go().
+     *
+     * @param listener The listener, called on the reader thread.
+     */
+    public void addInfoListener(SearchInfoListener listener) {
+        infoListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with addInfoListener().
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeInfoListener(SearchInfoListener listener) {
+        infoListeners.remove(listener);
+    }
+
+    /**
+     * Removes a finished search from the queue and sends the next queued search, if any.
+     */
+    private void finish(PendingSearch search) {
+        PendingSearch next;
+        synchronized (searches) {
+            searches.remove(search);
+            next = searches.peek();
+        }
+        if (next != null) {
+            send(next);
+        }
+    }
+
+    private PendingSearch pollSearch() {
+        synchronized (searches) {
+            return searches.poll();
+        }
+    }
+
+    /**
+     * Checks whether the engine process is still running.
+     *
+     * @return true if the engine has been started and has not exited.
+     */
+    public boolean isRunning() {
+        return stockfish != null && stockfish.isAlive();
     }
 
     /**
@@ -145,12 +541,34 @@ public class StockfishConnector {
      * - Destroys the process associated with the engine.
      */
     public void stopEngine() {
+        if (stockfish == null) {
+            return;
+        }
         try {
-            sendCommand("quit");  // Tell Stockfish to quit
+            if (stockfish.isAlive()) {
+                sendCommand("quit");  // Tell Stockfish to quit
+            }
             stockfish.destroy();  // Terminate the Stockfish process
         } catch (IOException e) {
             e.printStackTrace();  // Handle any IO exceptions during the shutdown process
         }
     }
 
+    /**
+     * A search started with go() that has not been answered yet.
+     */
+    private static final class PendingSearch {
+        final ChessBoard position;
+        final SearchLimits limits;
+        final SearchInfoListener listener;
+        final CompletableFuture<SearchResult> future = new CompletableFuture<>();
+        final SearchInfo best = new SearchInfo();  // Latest main line, reader thread only
+        volatile long startNanos;
+
+        PendingSearch(ChessBoard position, SearchLimits limits, SearchInfoListener listener) {
+            this.position = position;
+            this.limits = limits;
+            this.listener = listener;
+        }
+    }
 }
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: StockfishPool
+ *
+ * This class keeps several warm Stockfish processes and lends them out to callers, so
+ * independent jobs can use separate engines at the same time instead of queueing
+ * behind one. It is built on StockfishConnector.
+ *
+ * Key functionalities include:
+ * - Starting N engines up front and completing the UCI handshake on each.
+ * - Lending an idle engine to a caller, or making the caller wait in arrival order
+ *   when every engine is busy.
+ * - Resetting each returned engine with "stop", "ucinewgame" and "isready" so no state
+ *   leaks from one caller to the next, and replacing engines that have died or do not
+ *   answer "readyok" in time.
+ * - Failing callers, including those already waiting, once the pool is closed or has
+ *   lost every engine.
+ */
+
+package com.george.stockfish;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class StockfishPool implements AutoCloseable {
+
+    // How long a returned engine may take to answer "isready" before it is replaced
+    private static final long READY_TIMEOUT_SECONDS = 10;
+
+    // How often a waiting caller checks whether the pool was closed or ran out of engines
+    private static final long WAIT_CHECK_MILLIS = 100;
+
+    private final String pathToStockfish;
+    private final int size;
+
+    // Idle engines; the queue is fair, so waiting callers are served in arrival order
+    private final BlockingQueue<StockfishConnector> idle;
+
+    // Every engine owned by the pool, idle or lent out
+    private final List<StockfishConnector> engines = new CopyOnWriteArrayList<>();
+
+    // Engines that exist, idle or lent out; drops when a dead engine cannot be replaced
+    private final AtomicInteger live = new AtomicInteger();
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    /**
+     * Starts a pool of engines using the Stockfish executable at the default path.
+     *
+     * @param size The number of engine processes to keep.
+     * @throws IOException If an engine cannot be started.
+     */
+    public StockfishPool(int size) throws IOException {
+        this(size, StockfishConnector.DEFAULT_PATH);
+    }
+
+    /**
+     * Starts a pool of engines.
+     *
+     * @param size The number of engine processes to keep (at least 1).
+     * @param pathToStockfish The path to the Stockfish executable.
+     * @throws IOException If an engine cannot be started.
+     */
+    public StockfishPool(int size, String pathToStockfish) throws IOException {
+        if (size < 1) {
+            throw new IllegalArgumentException("A pool needs at least one engine: " + size);
+        }
+        this.pathToStockfish = pathToStockfish;
+        this.size = size;
+        this.idle = new ArrayBlockingQueue<>(size, true);
+
+        try {
+            for (int i = 0; i < size; i++) {
+                idle.add(startEngine());
+                live.incrementAndGet();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts one engine and waits until it is ready to accept commands.
+     */
+    private StockfishConnector startEngine() throws IOException {
+        StockfishConnector engine = new StockfishConnector(pathToStockfish);
+        if (!engine.startEngine()) {
+            throw new IOException("Failed to start Stockfish at " + pathToStockfish);
+        }
+        engines.add(engine);
+        engine.sendCommand("uci");
+        if (!engine.waitUntilReady(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            engines.remove(engine);
+            engine.stopEngine();
+            throw new IOException("Stockfish at " + pathToStockfish + " did not become ready");
+        }
+        return engine;
+    }
+
+    /**
+     * Borrows an engine, waiting until one is free if all are in use.
+     *
+     * The engine must be handed back with release() once the caller is done with it.
+     *
+     * @return An engine ready for a new game.
+     * @throws IOException If the pool is closed, or has no engines left because dead
+     * ones could not be replaced; also when that happens while waiting.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public StockfishConnector acquire() throws IOException, InterruptedException {
+        waiting.incrementAndGet();
+        try {
+            StockfishConnector engine;
+            do {
+                ensureAvailable();
+                engine = idle.poll(WAIT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            } while (engine == null);
+            return checkOut(engine);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Borrows an engine, waiting at most the given time for one to become free.
+     *
+     * @param timeout How long to wait.
+     * @param unit The unit of the timeout.
+     * @return An engine ready for a new game, or null if none became free in time.
+     * @throws IOException If the pool is closed or has no engines left.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public StockfishConnector acquire(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiting.incrementAndGet();
+        try {
+            while (true) {
+                ensureAvailable();
+                long remaining = deadline - System.nanoTime();
+                StockfishConnector engine = idle.poll(Math.max(0, Math.min(remaining,
+                        TimeUnit.MILLISECONDS.toNanos(WAIT_CHECK_MILLIS))), TimeUnit.NANOSECONDS);
+                if (engine != null) {
+                    return checkOut(engine);
+                }
+                if (remaining <= 0) {
+                    return null;
+                }
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Hands out an engine taken from the idle queue, unless close() ran meanwhile.
+     */
+    private StockfishConnector checkOut(StockfishConnector engine) throws IOException {
+        if (closed) {
+            engine.stopEngine();
+            throw new IOException("Stockfish pool is closed");
+        }
+        return engine;
+    }
+
+    /**
+     * Puts an engine back in the idle queue. If close() ran meanwhile it may already
+     * have emptied the queue, so the engine is taken out again and stopped.
+     */
+    private void makeIdle(StockfishConnector engine) {
+        idle.add(engine);
+        if (closed) {
+            idle.remove(engine);
+            engine.stopEngine();
+        }
+    }
+
+    /**
+     * Hands a borrowed engine back to the pool.
+     *
+     * A search the caller left running is stopped and the engine is reset with
+     * "ucinewgame", then it must answer "isready" within a few seconds before anyone
+     * else can borrow it. Otherwise it is stopped and a fresh one takes its place, so a
+     * dead, hung or out-of-step engine never goes back into the pool. If no fresh one
+     * can be started the pool carries on with one engine fewer, and once it has none
+     * left acquire() fails.
+     *
+     * @param engine An engine obtained from acquire().
+     */
+    public void release(StockfishConnector engine) {
+        if (closed) {
+            engine.stopEngine();
+            return;
+        }
+
+        try {
+            if (!engine.isRunning()) {
+                throw new IOException("Stockfish process has exited");
+            }
+            engine.sendCommand("stop");  // Ends a search the caller gave up on; ignored when idle
+            engine.sendCommand("ucinewgame");
+            if (!engine.waitUntilReady(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("Stockfish did not answer isready");
+            }
+            makeIdle(engine);
+        } catch (IOException e) {
+            engines.remove(engine);
+            engine.stopEngine();
+            try {
+                makeIdle(startEngine());
+            } catch (IOException restartFailure) {
+                live.decrementAndGet();
+                restartFailure.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Borrows an engine, asks it for the best move in a position and hands it back.
+     *
+     * @param positionCommand The UCI position command (e.g., "position startpos moves e2e4").
+     * @param goCommand The UCI go command (e.g., "go movetime 1000").
+     * @return The best move in UCI notation, or null if the engine gave none.
+     * @throws IOException If communication with the engine fails.
+     * @throws InterruptedException If the thread is interrupted while waiting for an engine.
+     */
+    public String getBestMove(String positionCommand, String goCommand) throws IOException, InterruptedException {
+        StockfishConnector engine = acquire();
+        try {
+            engine.sendCommand(positionCommand);
+            engine.sendCommand(goCommand);
+            return engine.getBestMove();
+        } finally {
+            release(engine);
+        }
+    }
+
+    /**
+     * @return The number of engines the pool was created with.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return The number of engines the pool still has, idle or lent out. It is less
+     * than getSize() when dead engines could not be replaced.
+     */
+    public int getEngineCount() {
+        return live.get();
+    }
+
+    /**
+     * @return The number of engines currently free to borrow.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return The number of callers waiting for an engine.
+     */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    private void ensureAvailable() throws IOException {
+        if (closed) {
+            throw new IOException("Stockfish pool is closed");
+        }
+        if (live.get() == 0) {
+            throw new IOException("No Stockfish engines left in the pool");
+        }
+    }
+
+    /**
+     * Stops every engine in the pool. Engines still lent out are stopped as well, and
+     * are simply discarded when they are released. Callers waiting in acquire() fail
+     * with an IOException.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (StockfishConnector engine : engines) {
+            engine.stopEngine();
+        }
+        engines.clear();
+        idle.clear();
+    }
+}
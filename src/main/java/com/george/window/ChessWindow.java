@@ -1,7 +1,9 @@
 package com.george.window;
 
 import com.george.board.ChessBoard;
+import com.george.board.Move;
 import com.george.images.ChessPiece;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
@@ -11,7 +13,8 @@ import javafx.scene.layout.Pane;
 import javafx.stage.Stage;
 import javafx.scene.layout.StackPane;
 
-import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,6 +57,14 @@ import java.util.logging.Logger;
  * The chessboard is represented as an 8x8 grid, and piece images are loaded 
  * dynamically based on their positions on the board. The class manages both 
  * the internal game state and the visual representation.
+ *
+ * Each of the 64 squares has one ImageView that lives as long as the window; a redraw
+ * only swaps the image shown on squares whose piece changed. Piece images are decoded
+ * once and shared through PieceSprites.
+ *
+ * The window listens to its ChessBoard for changed squares and collects them until
+ * the next frame, when an AnimationTimer redraws just those squares. However many
+ * moves are played between two frames, the scene is updated at most once per pulse.
  */
 public class ChessWindow extends Application {
 
@@ -83,6 +94,15 @@ public class ChessWindow extends Application {
     private StackPane root = new StackPane();
     private Pane boardPane = new Pane();
 
+    // One view per square (indexed like ChessBoard squares), created once in start()
+    private final ImageView[] squareViews = new ImageView[64];
+
+    // Squares changed since the last frame, one bit per square; set from any thread
+    private final AtomicLong dirtySquares = new AtomicLong();
+
+    // Redraws the dirty squares once per frame
+    private AnimationTimer redrawTimer;
+
     /**
      * Initializes the primary stage (main window) for the chess game.
      *
@@ -100,12 +120,7 @@ public class ChessWindow extends Application {
     @Override
     public void start(Stage primaryStage) throws Exception {
         // Load the chessboard image
-        InputStream boardImageStream = getClass().getResourceAsStream("/images/BoardEmpty.png");
-        if (boardImageStream == null) {
-            throw new Exception("Chessboard image not found");
-        }
-
-        Image chessBoardImage = new Image(boardImageStream);
+        Image chessBoardImage = PieceSprites.get(ChessPiece.BOARD);
         ImageView boardImageView = new ImageView(chessBoardImage);
 
         // Initialize chessboard state
@@ -113,14 +128,38 @@ public class ChessWindow extends Application {
         boardPane.getChildren().add(boardImageView);
         root.getChildren().add(boardPane);
 
+        // Place one empty view on each square; displayChessPieces only changes their images
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                ImageView view = new ImageView();
+                view.setX(offsetX + col * squareSize);
+                view.setY(offsetY + row * squareSize);
+                squareViews[ChessBoard.square(row, col)] = view;
+                boardPane.getChildren().add(view);
+            }
+        }
+
         // Display pieces on the board
         displayChessPieces(-1, -1);  // Display all pieces, none are dragged yet
 
-        InputStream iconStream = getClass().getResourceAsStream("/images/KnightW.png");
-        if (iconStream == null) {
-            throw new Exception("Icon image not found");
-        }
-        Image iconImage = new Image(iconStream);
+        // From now on, only the squares the board reports as changed are redrawn
+        chessBoard.addBoardListener((board, changed) -> dirtySquares.getAndAccumulate(changed, (a, b) -> a | b));
+        redrawTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                long dirty = dirtySquares.getAndSet(0L);
+                if (dirty != 0L) {
+                    try {
+                        updateSquares(dirty);
+                    } catch (Exception e) {
+                        Logger.getLogger(ChessWindow.class.getName()).log(Level.SEVERE, null, e);
+                    }
+                }
+            }
+        };
+        redrawTimer.start();
+
+        Image iconImage = PieceSprites.get(ChessPiece.WHITE_KNIGHT);
         primaryStage.getIcons().add(iconImage);
 
         scene = new Scene(root, chessBoardImage.getWidth(), chessBoardImage.getHeight());
@@ -141,9 +180,9 @@ public class ChessWindow extends Application {
      * dragged (specified by the excludeRow and excludeCol parameters), that
      * piece is temporarily excluded from the display.
      *
-     * - Removes all currently displayed pieces except the board background. -
-     * Loads and displays the appropriate image for each piece based on its
-     * position.
+     * Each square keeps its ImageView; only squares whose image differs from
+     * the one already shown are touched, so redrawing an unchanged board does
+     * no work in the scene graph.
      *
      * @param excludeRow The row of the piece currently being dragged (exclude
      * from rendering), or -1 if none.
@@ -152,86 +191,36 @@ public class ChessWindow extends Application {
      * @throws Exception If the image for any chess piece cannot be found.
      */
     public void displayChessPieces(int excludeRow, int excludeCol) throws Exception {
-        int[][] board = chessBoard.getBoard();  // Get the current state of the chessboard
-
-        // Remove all piece images except the board background (which is the first child)
-        boardPane.getChildren().removeIf(node -> node instanceof ImageView && node != boardPane.getChildren().get(0));
-
-        // Iterate through each row and column of the board
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
-                int piece = board[row][col];  // Get the piece at the current board position
+                // Leave the square empty if it holds the piece being dragged
+                int piece = row == excludeRow && col == excludeCol ? 0 : chessBoard.getPiece(row, col);
+                Image sprite = PieceSprites.forValue(piece);
 
-                // If there is a piece at this position and it is not the one being dragged
-                if (piece != 0 && !(row == excludeRow && col == excludeCol)) {
-                    ChessPiece chessPiece = getChessPiece(piece);  // Get the corresponding ChessPiece enum
-
-                    if (chessPiece != null) {
-                        // Load the image for the current piece
-                        InputStream pieceImageStream = getClass().getResourceAsStream("/images/" + chessPiece.getFileName());
-                        if (pieceImageStream == null) {
-                            throw new Exception("Chess piece image not found: " + chessPiece.getFileName());
-                        }
-
-                        // Create an Image object and wrap it in an ImageView to display on the board
-                        Image pieceImage = new Image(pieceImageStream);
-                        ImageView pieceImageView = new ImageView(pieceImage);
-
-                        // Set the position of the piece on the board (account for offsets)
-                        pieceImageView.setX(offsetX + col * squareSize);
-                        pieceImageView.setY(offsetY + row * squareSize);
-
-                        // Add the piece image to the board
-                        boardPane.getChildren().add(pieceImageView);
-                    }
+                ImageView view = squareViews[ChessBoard.square(row, col)];
+                if (view.getImage() != sprite) {
+                    view.setImage(sprite);
                 }
             }
         }
     }
 
     /**
-     * Returns the corresponding ChessPiece enum based on the value in the
-     * chessboard array.
+     * Redraws the given squares from the current state of the board.
      *
-     * This method maps numerical values from the chessboard array to specific
-     * ChessPiece enums. Positive values represent white pieces, and negative
-     * values represent black pieces. Each piece type is associated with a
-     * specific integer (e.g., 1 for white pawn, -1 for black pawn).
-     *
-     * @param pieceValue The numerical value representing a chess piece on the
-     * board. Positive values represent white pieces, negative values represent
-     * black pieces.
-     * @return The corresponding ChessPiece enum, or null if the value does not
-     * match a valid piece.
+     * @param squares One bit per square to redraw (see ChessBoard.square).
+     * @throws Exception If the image for a chess piece cannot be found.
      */
-    private ChessPiece getChessPiece(int pieceValue) {
-        switch (pieceValue) {
-            case 1:
-                return ChessPiece.WHITE_PAWN;
-            case 2:
-                return ChessPiece.WHITE_ROOK;
-            case 3:
-                return ChessPiece.WHITE_KNIGHT;
-            case 4:
-                return ChessPiece.WHITE_BISHOP;
-            case 5:
-                return ChessPiece.WHITE_QUEEN;
-            case 6:
-                return ChessPiece.WHITE_KING;
-            case -1:
-                return ChessPiece.BLACK_PAWN;
-            case -2:
-                return ChessPiece.BLACK_ROOK;
-            case -3:
-                return ChessPiece.BLACK_KNIGHT;
-            case -4:
-                return ChessPiece.BLACK_BISHOP;
-            case -5:
-                return ChessPiece.BLACK_QUEEN;
-            case -6:
-                return ChessPiece.BLACK_KING;
-            default:
-                return null;  // Return null if the pieceValue doesn't match any valid piece
+    private void updateSquares(long squares) throws Exception {
+        while (squares != 0) {
+            int sq = Long.numberOfTrailingZeros(squares);
+            squares &= squares - 1;
+
+            Image sprite = PieceSprites.forValue(chessBoard.getPiece(sq));
+            ImageView view = squareViews[sq];
+            if (view.getImage() != sprite) {
+                view.setImage(sprite);
+            }
         }
     }
 
@@ -239,14 +228,14 @@ public class ChessWindow extends Application {
      * Executes a move on the chessboard based on a move string and updates the
      * visual display.
      *
-     * This method interprets a chess move string in algebraic notation (e.g.,
-     * "e2e4") and applies the move on the internal chessboard. It also handles
+     * This method interprets a chess move string in UCI notation (e.g., "e2e4"
+     * or "e7e8q") and applies the move on the internal chessboard. It also handles
      * special moves like castling: - "0-0" for kingside castling - "0-0-0" for
-     * queenside castling After updating the board's internal state, the display
-     * is refreshed to reflect the changes.
+     * queenside castling The squares the move changes are redrawn on the next
+     * frame.
      *
-     * - Validates the move to ensure it is within bounds and that a piece is
-     * present at the source. - Updates both the logical chessboard state and
+     * - Validates the move against the legal moves of the current position. -
+     * Updates both the logical chessboard state and
      * the visual representation of the board.
      *
      * @param move The move in algebraic notation (e.g., "e2e4" for regular
@@ -255,71 +244,32 @@ public class ChessWindow extends Application {
      * during rendering.
      */
     public void movePiece(String move) throws Exception {
+        // The back row of the side to move, used for castling
+        int homeRow = chessBoard.currentPlayer() == ChessBoard.Player.WHITE ? 7 : 0;
+
         if (move.equals("0-0")) {  // Kingside castling
-            // Move the white king and rook for kingside castling
-            chessBoard.movePiece(7, 4, 7, 6);  // King from e1 to g1
-            chessBoard.movePiece(7, 7, 7, 5);  // Rook from h1 to f1
-            displayChessPieces(-1, -1);  // Redraw all pieces
-            System.out.println("Kingside castling for white.");
+            // Moving the king two squares also moves the rook
+            chessBoard.movePiece(homeRow, 4, homeRow, 6);  // King from e-file to g-file
+            System.out.println("Kingside castling.");
         } else if (move.equals("0-0-0")) {  // Queenside castling
-            // Move the white king and rook for queenside castling
-            chessBoard.movePiece(7, 4, 7, 2);  // King from e1 to c1
-            chessBoard.movePiece(7, 0, 7, 3);  // Rook from a1 to d1
-            displayChessPieces(-1, -1);  // Redraw all pieces
-            System.out.println("Queenside castling for white.");
+            // Moving the king two squares also moves the rook
+            chessBoard.movePiece(homeRow, 4, homeRow, 2);  // King from e-file to c-file
+            System.out.println("Queenside castling.");
         } else {
-            // Regular move handling for moves like "e2e4"
-            int startX = move.charAt(0) - 'a';  // Convert column letter to index ('a' -> 0, 'b' -> 1, etc.)
-            int startY = 8 - Character.getNumericValue(move.charAt(1));  // Convert row number to index (rows are reversed)
-            int endX = move.charAt(2) - 'a';
-            int endY = 8 - Character.getNumericValue(move.charAt(3));
-
-            // Validate that the move coordinates are within the board boundaries
-            if (!isWithinBounds(startX, startY, endX, endY)) {
-                System.out.println("Invalid move coordinates.");
+            // Regular moves like "e2e4", or "e7e8q" for a promotion
+            int packed = chessBoard.parseUciMove(move);
+            if (packed == Move.NONE) {
+                System.out.println("Invalid move: " + move);
                 return;
             }
 
-            // Get the piece from the starting position
-            int piece = chessBoard.getBoard()[startY][startX];
-
-            if (piece == 0) {
-                // If no piece is found at the source, print an error and exit
-                System.out.println("No piece found at the source.");
-                return; // Exit if there's no piece to move
-            }
-
-            // Step 1: Update the chessboard's internal state by moving the piece
-            chessBoard.movePiece(startY, startX, endY, endX);
-
-            // Step 2: Refresh the board display to reflect the updated positions
-            displayChessPieces(-1, -1);  // Redraw all pieces
+            // Update the chessboard's internal state; the changed squares are redrawn next frame
+            chessBoard.makeMove(packed);
 
             System.out.println("Move made: " + move);
         }
     }
 
-    /**
-     * Checks if the provided start and end coordinates are within the bounds of
-     * the chessboard.
-     *
-     * This method ensures that both the starting and ending positions of a move
-     * are within the 8x8 grid of the chessboard. It returns true if both
-     * coordinates are valid, and false otherwise.
-     *
-     * @param startX The starting column index (0 to 7) of the move.
-     * @param startY The starting row index (0 to 7) of the move.
-     * @param endX The ending column index (0 to 7) of the move.
-     * @param endY The ending row index (0 to 7) of the move.
-     * @return True if the move is within the valid bounds of the chessboard;
-     * false otherwise.
-     */
-    private boolean isWithinBounds(int startX, int startY, int endX, int endY) {
-        // Check if all coordinates are within the bounds of 0 to 7 (for an 8x8 chessboard)
-        return (startX >= 0 && startX < 8 && startY >= 0 && startY < 8
-                && endX >= 0 && endX < 8 && endY >= 0 && endY < 8);
-    }
-
     /**
      * Adds mouse event listeners to the chessboard scene to handle player
      * interactions.
@@ -426,7 +376,7 @@ public class ChessWindow extends Application {
                 moving = false;  // Mark that the piece is no longer being moved
 
                 // Step 1: Get the piece from the original position on the board
-                int piece = chessBoard.getBoard()[startY][startX];
+                int piece = chessBoard.getPiece(startY, startX);
 
                 // Step 2: Remove the piece from its original position
                 chessBoard.removePiece(startY, startX);
@@ -434,16 +384,11 @@ public class ChessWindow extends Application {
                 // Step 3: Place the piece in its new position
                 chessBoard.addPiece(endY, endX, piece);
 
-                // Step 4: Redraw the chessboard to reflect the updated piece positions
-                try {
-                    displayChessPieces(-1, -1);  // Redraw all pieces on the board
-                } catch (Exception e) {
-                    Logger.getLogger(ChessWindow.class.getName()).log(Level.SEVERE, null, e);
-                }
+                // The board reports both squares as changed; they are redrawn next frame
 
                 // Print the updated board state for debugging purposes
                 System.out.println("Board: " + this.chessBoard.toString());
-                System.out.println("Process: " + this.chessBoard.getBoardArray().toString());
+                System.out.println("Process: " + Arrays.toString(this.chessBoard.getBoardArray()));
             } else {
                 // Piece was not moved (user released on the same square)
                 //System.out.println("Piece was not moved.");
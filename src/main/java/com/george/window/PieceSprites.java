@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: PieceSprites
+ *
+ * This class decodes the image of each chess piece once and hands out the same Image
+ * every time it is asked again, so redrawing the board never reads or decodes a PNG.
+ * JavaFX images are immutable, so one sprite can be shown by any number of ImageViews
+ * and windows at once.
+ *
+ * Sprites can also be asked for at a given size. They are then decoded already
+ * scaled, once per size, so views that draw many small boards never scale an image
+ * while drawing.
+ */
+package com.george.window;
+
+import com.george.images.ChessPiece;
+import javafx.scene.image.Image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class PieceSprites {
+
+    // Location of the piece images on the class path
+    private static final String IMAGE_DIRECTORY = "/images/";
+
+    // Decoded images, filled the first time each piece is asked for
+    private static final Map<ChessPiece, Image> SPRITES = new EnumMap<>(ChessPiece.class);
+
+    // Pre-scaled images, by size in pixels
+    private static final Map<Integer, Map<ChessPiece, Image>> SCALED = new HashMap<>();
+
+    private PieceSprites() {
+        // Static helpers only
+    }
+
+    /**
+     * Returns the decoded image of a piece, loading it on first use.
+     *
+     * @param piece The piece (or ChessPiece.BOARD for the empty board).
+     * @return The image.
+     * @throws IOException If the image cannot be found.
+     */
+    public static Image get(ChessPiece piece) throws IOException {
+        synchronized (SPRITES) {
+            Image sprite = SPRITES.get(piece);
+            if (sprite == null) {
+                sprite = load(piece);
+                SPRITES.put(piece, sprite);
+            }
+            return sprite;
+        }
+    }
+
+    /**
+     * Returns the decoded image of the piece with the given board value.
+     *
+     * @param pieceValue The value stored on the ChessBoard (see ChessPiece.of).
+     * @return The image, or null for an empty square.
+     * @throws IOException If the image cannot be found.
+     */
+    public static Image forValue(int pieceValue) throws IOException {
+        ChessPiece piece = ChessPiece.of(pieceValue);
+        return piece == null ? null : get(piece);
+    }
+
+    /**
+     * Returns the image of a piece decoded at the given size, loading it on first use.
+     *
+     * @param piece The piece.
+     * @param size The width and height in pixels.
+     * @return The scaled image.
+     * @throws IOException If the image cannot be found.
+     */
+    public static Image get(ChessPiece piece, int size) throws IOException {
+        synchronized (SPRITES) {
+            Map<ChessPiece, Image> sprites = SCALED.computeIfAbsent(size, key -> new EnumMap<>(ChessPiece.class));
+            Image sprite = sprites.get(piece);
+            if (sprite == null) {
+                sprite = load(piece, size);
+                sprites.put(piece, sprite);
+            }
+            return sprite;
+        }
+    }
+
+    private static Image load(ChessPiece piece) throws IOException {
+        return load(piece, 0);
+    }
+
+    /**
+     * Decodes the image of a piece, scaled to size x size pixels, or at its own size if
+     * size is 0.
+     */
+    private static Image load(ChessPiece piece, int size) throws IOException {
+        try (InputStream stream = PieceSprites.class.getResourceAsStream(IMAGE_DIRECTORY + piece.getFileName())) {
+            if (stream == null) {
+                throw new IOException("Chess piece image not found: " + piece.getFileName());
+            }
+            return size > 0 ? new Image(stream, size, size, true, true) : new Image(stream);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2024 
+ * George Miller
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * ----------------------------------------------------------------------------
+ *
+ * Class: SpectatorGrid
+ *
+ * This class shows many live games at once, as a grid of small boards drawn on a
+ * single Canvas. It is meant for watching dozens of self-play or analysis games, where
+ * one node per piece would put thousands of ImageViews in the scene graph.
+ *
+ * Each tile of the grid watches one ChessBoard through a BoardListener. When the board
+ * changes, the listener copies the changed squares into the tile and marks them dirty,
+ * on whatever thread is playing the game. Once per frame an AnimationTimer draws only
+ * the dirty squares of each tile, with sprites decoded once at the tile's square size,
+ * so a quiet board costs nothing and a busy one costs a few image draws per move.
+ */
+package com.george.window;
+
+import com.george.board.BoardListener;
+import com.george.board.ChessBoard;
+import com.george.images.ChessPiece;
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SpectatorGrid {
+
+    // Space between boards, in pixels
+    private static final int GAP = 8;
+
+    private static final Color LIGHT_SQUARE = Color.rgb(240, 217, 181);
+    private static final Color DARK_SQUARE = Color.rgb(181, 136, 99);
+    private static final Color BACKGROUND = Color.rgb(48, 48, 48);
+
+    private final int columns;
+    private final int squareSize;
+    private final Tile[] tiles;
+    private final Canvas canvas;
+    private final GraphicsContext graphics;
+
+    // Sprites at the tile's square size, indexed by board value + 6 (see ChessPiece.of)
+    private final Image[] sprites = new Image[13];
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drawDirtySquares();
+        }
+    };
+
+    /**
+     * Creates a grid of empty boards. Must be called on the JavaFX application thread.
+     *
+     * @param boards The number of boards shown.
+     * @param columns The number of boards per row.
+     * @param squareSize The size of one square in pixels.
+     * @throws IOException If the piece images cannot be loaded.
+     */
+    public SpectatorGrid(int boards, int columns, int squareSize) throws IOException {
+        this.columns = columns;
+        this.squareSize = squareSize;
+        this.tiles = new Tile[boards];
+        for (int i = 0; i < boards; i++) {
+            tiles[i] = new Tile();
+        }
+
+        int rows = (boards + columns - 1) / columns;
+        int boardSize = 8 * squareSize;
+        canvas = new Canvas(columns * (boardSize + GAP) + GAP, rows * (boardSize + GAP) + GAP);
+        graphics = canvas.getGraphicsContext2D();
+
+        for (int value = -6; value <= 6; value++) {
+            ChessPiece piece = ChessPiece.of(value);
+            if (piece != null) {
+                sprites[value + 6] = PieceSprites.get(piece, squareSize);
+            }
+        }
+
+        graphics.setFill(BACKGROUND);
+        graphics.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * @return The canvas the boards are drawn on, to be placed in a scene.
+     */
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    /**
+     * @return The number of boards in the grid.
+     */
+    public int getBoardCount() {
+        return tiles.length;
+    }
+
+    /**
+     * Starts drawing changes, once per frame.
+     */
+    public void start() {
+        timer.start();
+    }
+
+    /**
+     * Stops drawing changes. Boards keep being tracked and are drawn when started again.
+     */
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * Shows a board in one tile, replacing the board it showed before.
+     *
+     * ChessBoard is not thread-safe, so call this on the thread that plays on both the
+     * old and the new board, before the new board's first move.
+     *
+     * @param tile The tile, from 0 to getBoardCount() - 1.
+     * @param board The board to show.
+     */
+    public void watch(int tile, ChessBoard board) {
+        Tile t = tiles[tile];
+        synchronized (t) {
+            if (t.board != null) {
+                t.board.removeBoardListener(t);
+            }
+            t.board = board;
+            board.addBoardListener(t);
+        }
+        t.squaresChanged(board, -1L);
+    }
+
+    /**
+     * Draws the dirty squares of every tile. Runs on the JavaFX application thread.
+     */
+    private void drawDirtySquares() {
+        int boardSize = 8 * squareSize;
+        for (int i = 0; i < tiles.length; i++) {
+            Tile tile = tiles[i];
+            long dirty = tile.dirty.getAndSet(0L);
+            if (dirty == 0L) {
+                continue;
+            }
+
+            double left = GAP + (i % columns) * (boardSize + GAP);
+            double top = GAP + (i / columns) * (boardSize + GAP);
+            while (dirty != 0L) {
+                int sq = Long.numberOfTrailingZeros(dirty);
+                dirty &= dirty - 1;
+
+                int row = sq >> 3;
+                int col = sq & 7;
+                double x = left + col * squareSize;
+                double y = top + row * squareSize;
+                graphics.setFill(((row + col) & 1) == 0 ? LIGHT_SQUARE : DARK_SQUARE);
+                graphics.fillRect(x, y, squareSize, squareSize);
+
+                Image sprite = sprites[tile.pieces.get(sq) + 6];
+                if (sprite != null) {
+                    graphics.drawImage(sprite, x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * One board of the grid: a copy of its pieces and the squares not drawn yet, both
+     * written by the thread playing the game and read by the drawing thread.
+     */
+    private static final class Tile implements BoardListener {
+        final AtomicIntegerArray pieces = new AtomicIntegerArray(64);
+        final AtomicLong dirty = new AtomicLong();
+        ChessBoard board;
+
+        @Override
+        public void squaresChanged(ChessBoard changed, long changedSquares) {
+            for (long squares = changedSquares; squares != 0L; squares &= squares - 1) {
+                int sq = Long.numberOfTrailingZeros(squares);
+                pieces.set(sq, changed.getPiece(sq));
+            }
+            dirty.getAndAccumulate(changedSquares, (a, b) -> a | b);
+        }
+    }
+}